@@ -0,0 +1,75 @@
+package com.cryptamail.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a SendRateLimiter quota check under 64-thread contention: one key shared
+ * by every thread (a single busy sender, worst-case CAS contention) and keys spread
+ * over many senders (the usual case). Each acquire is paired with a release so the limit is never hit and
+ * every call takes the full path.
+ *
+ * Run with: mvn -Pjmh test-compile exec:exec -Djmh.args="SlidingWindowLimiter"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SlidingWindowLimiterBenchmark {
+
+    private static final int KEYS = 10_000;
+
+    private SlidingWindowLimiter<Long> limiter;
+
+    @Setup
+    public void setUp() {
+        limiter = new SlidingWindowLimiter<>(1_000_000, Duration.ofHours(1), 12);
+        long now = System.currentTimeMillis();
+        for (long key = 0; key < KEYS; key++) {
+            limiter.tryAcquire(key, now);
+            limiter.release(key, now);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean hotKeySingleThread() {
+        return acquireAndRelease(0L);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean hotKeyContended() {
+        return acquireAndRelease(0L);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean spreadKeys() {
+        return acquireAndRelease(ThreadLocalRandom.current().nextLong(KEYS));
+    }
+
+    private boolean acquireAndRelease(Long key) {
+        long now = System.currentTimeMillis();
+        boolean acquired = limiter.tryAcquire(key, now);
+        if (acquired) {
+            limiter.release(key, now);
+        }
+        return acquired;
+    }
+}
@@ -2,6 +2,7 @@ package com.cryptamail;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Main Spring Boot application class for CryptaMail.
@@ -10,6 +11,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
  * All email content is encrypted on the client before being sent to the server.
  */
 @SpringBootApplication
+@EnableScheduling
 public class CryptaMailApplication {
     
     public static void main(String[] args) {
@@ -5,35 +5,63 @@ import com.cryptamail.dto.InitAttachmentRequest;
 import com.cryptamail.dto.UploadChunkRequest;
 import com.cryptamail.model.Attachment;
 import com.cryptamail.service.AttachmentService;
+import com.cryptamail.service.IdempotencyService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/attachments")
 public class AttachmentController {
 
+    public static final String CHUNK_IV_HEADER = "X-Chunk-Iv";
+    public static final String CHUNK_SIZE_HEADER = "X-Chunk-Size";
+    public static final String CHUNK_COUNT_HEADER = "X-Chunk-Count";
+
+    // Tomcat's sendfile request attributes: the connector writes the file itself, zero-copy
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     private final AttachmentService attachmentService;
+    private final IdempotencyService idempotencyService;
 
-    public AttachmentController(AttachmentService attachmentService) {
+    public AttachmentController(AttachmentService attachmentService, IdempotencyService idempotencyService) {
         this.attachmentService = attachmentService;
+        this.idempotencyService = idempotencyService;
     }
 
+    // A retry with the same Idempotency-Key gets the first attachment back instead of reserving quota again
     @PostMapping("/init")
     public ResponseEntity<?> initUpload(
             @RequestBody InitAttachmentRequest request,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
             Authentication auth) {
 
-        Attachment attachment =
-                attachmentService.initUpload(auth.getName(), request);
+        return idempotencyService.execute("attachment-init", auth.getName(), idempotencyKey, request, () -> {
+            Attachment attachment =
+                    attachmentService.initUpload(auth.getName(), request);
 
-        return ResponseEntity.ok(Map.of(
-                "id", attachment.getId(),
-                "status", attachment.getStatus(),
-                "totalChunks", attachment.getTotalChunks()
-        ));
+            return ResponseEntity.ok(Map.of(
+                    "id", attachment.getId(),
+                    "status", attachment.getStatus(),
+                    "totalChunks", attachment.getTotalChunks()
+            ));
+        });
     }
 
     @PostMapping("/{id}/chunk")
@@ -46,6 +74,24 @@ public class AttachmentController {
         return ResponseEntity.ok().build();
     }
 
+    // Binary alternative to POST /{id}/chunk: raw ciphertext body, IV and size in headers
+    @PutMapping(value = "/{id}/chunks/{index}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> putChunk(
+            @PathVariable Long id,
+            @PathVariable Integer index,
+            @RequestHeader(CHUNK_IV_HEADER) String iv,
+            @RequestHeader(CHUNK_SIZE_HEADER) long size,
+            HttpServletRequest request,
+            Authentication auth) throws IOException {
+
+        long contentLength = request.getContentLengthLong();
+        if (contentLength >= 0 && contentLength != size) {
+            throw new IllegalArgumentException(CHUNK_SIZE_HEADER + " does not match Content-Length");
+        }
+        attachmentService.uploadChunk(id, index, iv, size, request.getInputStream(), auth.getName());
+        return ResponseEntity.ok().build();
+    }
+
     @GetMapping("/{id}/status")
     public ResponseEntity<AttachmentStatusResponse> getStatus(
             @PathVariable Long id,
@@ -76,6 +122,75 @@ public class AttachmentController {
         );
     }
 
+    // Binary alternative to GET /{id}/chunks/{index}: raw ciphertext, IV and size in headers, single byte ranges
+    @GetMapping("/{id}/chunks/{index}/data")
+    public void getChunkData(
+            @PathVariable Long id,
+            @PathVariable Integer index,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String rangeHeader,
+            HttpServletRequest request,
+            HttpServletResponse response,
+            Authentication auth) throws IOException {
+
+        AttachmentService.ChunkDownload download = attachmentService.openChunk(id, index, auth.getName());
+        long length = download.length();
+
+        long start = 0;
+        long end = length - 1;
+        List<HttpRange> ranges = List.of();
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException ignored) {
+            // Malformed Range headers are ignored and the whole chunk is sent
+        }
+        if (ranges.size() == 1) {
+            HttpRange range = ranges.get(0);
+            try {
+                start = range.getRangeStart(length);
+                end = range.getRangeEnd(length);
+            } catch (IllegalArgumentException unsatisfiable) {
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                return;
+            }
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+        long count = end - start + 1;
+
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-store");
+        response.setHeader(CHUNK_IV_HEADER, download.chunk().getIv());
+        response.setHeader(CHUNK_SIZE_HEADER, String.valueOf(download.chunk().getSize()));
+        response.setContentLengthLong(count);
+        if (count == 0) return;
+
+        Optional<Path> file = attachmentService.chunkFile(download);
+        if (file.isPresent() && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.get().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+        attachmentService.transferChunk(download, start, count, Channels.newChannel(response.getOutputStream()));
+    }
+
+    // Whole attachment in one response, one frame per chunk; see AttachmentService.streamContent for the format
+    @GetMapping("/{id}/content")
+    public void getContent(
+            @PathVariable Long id,
+            HttpServletResponse response,
+            Authentication auth) throws IOException {
+
+        AttachmentService.ContentDownload download = attachmentService.openContent(id, auth.getName());
+
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-store");
+        response.setHeader(CHUNK_COUNT_HEADER, String.valueOf(download.totalChunks()));
+        attachmentService.streamContent(download, response.getOutputStream());
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<?> getMetadata(
             @PathVariable Long id,
@@ -1,70 +1,309 @@
 package com.cryptamail.controller;
 
+import com.cryptamail.dto.BatchSendEmailRequest;
+import com.cryptamail.dto.BulkMutationRequest;
+import com.cryptamail.dto.BulkMutationResponse;
 import com.cryptamail.dto.DeletedCountResponse;
+import com.cryptamail.dto.DeliveryStatusResponse;
+import com.cryptamail.dto.DraftRequest;
+import com.cryptamail.dto.DraftResponse;
 import com.cryptamail.dto.EmailDto;
+import com.cryptamail.dto.MailboxChangesResponse;
+import com.cryptamail.dto.MailboxCountsResponse;
+import com.cryptamail.dto.MailboxPage;
 import com.cryptamail.dto.SendEmailRequest;
+import com.cryptamail.model.Delivery;
+import com.cryptamail.model.EmailMessage;
+import com.cryptamail.service.DeliveryQueueService;
 import com.cryptamail.service.EmailService;
+import com.cryptamail.service.IdempotencyService;
+import com.cryptamail.service.MailboxExportService;
+import com.cryptamail.service.MailboxStreamService;
 import jakarta.validation.Valid;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.net.URI;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/emails")
 public class EmailController {
 
     private final EmailService emailService;
+    private final MailboxStreamService mailboxStreamService;
+    private final MailboxExportService mailboxExportService;
+    private final DeliveryQueueService deliveryQueueService;
+    private final IdempotencyService idempotencyService;
 
-    public EmailController(EmailService emailService) {
+    public EmailController(EmailService emailService, MailboxStreamService mailboxStreamService,
+                           MailboxExportService mailboxExportService, DeliveryQueueService deliveryQueueService,
+                           IdempotencyService idempotencyService) {
         this.emailService = emailService;
+        this.mailboxStreamService = mailboxStreamService;
+        this.mailboxExportService = mailboxExportService;
+        this.deliveryQueueService = deliveryQueueService;
+        this.idempotencyService = idempotencyService;
     }
 
     /**
      * ✅ GET INBOX
      * Identity is taken ONLY from JWT (Authentication)
      * NO username from frontend
+     *
+     * Folder endpoints are keyset paginated: pass the nextCursor of the
+     * previous page as ?cursor= and an optional ?limit= page size.
+     * They carry a weak ETag of the mailbox version and answer a matching
+     * If-None-Match with 304 without running the folder query.
      */
     @GetMapping("/inbox")
-    public ResponseEntity<List<EmailDto>> getInbox(Authentication authentication) {
+    public ResponseEntity<MailboxPage> getInbox(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            Authentication authentication,
+            WebRequest request
+    ) {
         String username = authentication.getName();
-        List<EmailDto> inbox = emailService.getInbox(username);
-        return ResponseEntity.ok(inbox);
+        return conditional(username, request, () -> emailService.getInbox(username, cursor, limit));
     }
 
     /**
      * ✅ GET SENT
      */
     @GetMapping("/sent")
-    public ResponseEntity<List<EmailDto>> getSent(Authentication authentication) {
+    public ResponseEntity<MailboxPage> getSent(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            Authentication authentication,
+            WebRequest request
+    ) {
         String username = authentication.getName();
-        List<EmailDto> sent = emailService.getSent(username);
-        return ResponseEntity.ok(sent);
+        return conditional(username, request, () -> emailService.getSent(username, cursor, limit));
+    }
+
+    /**
+     * ✅ GET DRAFTS
+     */
+    @GetMapping("/drafts")
+    public ResponseEntity<MailboxPage> getDrafts(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            Authentication authentication,
+            WebRequest request
+    ) {
+        String username = authentication.getName();
+        return conditional(username, request, () -> emailService.getDrafts(username, cursor, limit));
+    }
+
+    /**
+     * ✅ SAVE DRAFT
+     * Creates the draft; autosaves then PUT to /drafts/{id} with the returned version.
+     */
+    @PostMapping("/drafts")
+    public ResponseEntity<DraftResponse> saveDraft(
+            @Valid @RequestBody DraftRequest request,
+            Authentication authentication
+    ) {
+        return ResponseEntity.ok(emailService.saveDraft(request, authentication.getName()));
+    }
+
+    /**
+     * ✅ UPDATE DRAFT
+     * Rewrites the draft in place; 409 if request.version is not the current one.
+     */
+    @PutMapping("/drafts/{id}")
+    public ResponseEntity<DraftResponse> updateDraft(
+            @PathVariable Long id,
+            @Valid @RequestBody DraftRequest request,
+            Authentication authentication
+    ) {
+        return ResponseEntity.ok(emailService.updateDraft(id, request, authentication.getName()));
+    }
+
+    /**
+     * ✅ SEND DRAFT
+     * The draft row becomes the sent message; optional ?version= guards against a newer autosave.
+     */
+    @PostMapping("/drafts/{id}/send")
+    public ResponseEntity<?> sendDraft(
+            @PathVariable Long id,
+            @RequestParam(required = false) Long version,
+            @Valid @RequestBody SendEmailRequest request,
+            Authentication authentication
+    ) {
+        emailService.sendDraft(id, version, request, authentication.getName());
+        return ResponseEntity.ok().build();
+    }
+
+    /**
+     * ✅ DISCARD DRAFT
+     */
+    @DeleteMapping("/drafts/{id}")
+    public ResponseEntity<?> discardDraft(
+            @PathVariable Long id,
+            Authentication authentication
+    ) {
+        emailService.discardDraft(id, authentication.getName());
+        return ResponseEntity.ok().build();
     }
 
     /**
      * ✅ GET TRASH
      */
     @GetMapping("/trash")
-    public ResponseEntity<List<EmailDto>> getTrash(Authentication authentication) {
+    public ResponseEntity<MailboxPage> getTrash(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            Authentication authentication,
+            WebRequest request
+    ) {
+        String username = authentication.getName();
+        return conditional(username, request, () -> emailService.getTrash(username, cursor, limit));
+    }
+
+    /**
+     * ✅ GET FOLDER COUNTS
+     * Served from the materialized per-user counter row, not from the folders.
+     */
+    @GetMapping("/counts")
+    public ResponseEntity<MailboxCountsResponse> getCounts(Authentication authentication) {
+        return ResponseEntity.ok(emailService.getCounts(authentication.getName()));
+    }
+
+    /**
+     * ✅ STREAM NEW MAIL
+     * Server-Sent Events: a "new-mail" event with the header and folder counts
+     * for every message received while connected, plus periodic heartbeats.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(Authentication authentication) {
+        return mailboxStreamService.open(authentication.getName());
+    }
+
+    /**
+     * ✅ EXPORT FOLDER
+     * Full messages (bodies included) of ?folder= as one JSON array, written
+     * incrementally instead of being built in memory first.
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportFolder(
+            @RequestParam(defaultValue = "inbox") String folder,
+            Authentication authentication
+    ) {
         String username = authentication.getName();
-        List<EmailDto> trash = emailService.getTrash(username);
-        return ResponseEntity.ok(trash);
+        MailboxExportService.Folder target = MailboxExportService.Folder.from(folder);
+        StreamingResponseBody body = out -> mailboxExportService.export(username, target, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + target.name().toLowerCase() + ".json\"")
+                .body(body);
+    }
+
+    /**
+     * ✅ GET CHANGES
+     * Headers and tombstones of messages changed after ?since= (the latestSeq of
+     * the previous call). A position that was purged or is too far behind returns resyncRequired.
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<MailboxChangesResponse> getChanges(
+            @RequestParam(defaultValue = "0") long since,
+            Authentication authentication
+    ) {
+        return ResponseEntity.ok(emailService.getChanges(authentication.getName(), since));
+    }
+
+    /**
+     * ✅ GET EMAIL
+     * Full message with encrypted body; folder listings only return headers.
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<EmailDto> getEmail(
+            @PathVariable Long id,
+            Authentication authentication
+    ) {
+        EmailDto email = emailService.getEmail(id, authentication.getName());
+        return ResponseEntity.ok(email);
     }
 
     /**
      * ✅ SEND EMAIL
+     * With an Idempotency-Key header a retried request is not sent again;
+     * the first response is replayed instead.
      */
     @PostMapping("/send")
     public ResponseEntity<?> 
     sendEmail(
             @Valid @RequestBody SendEmailRequest request,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
             Authentication authentication
     ) {
         String senderUsername = authentication.getName();
-        emailService.sendEmail(request, senderUsername);
-        return ResponseEntity.ok().build();
+        return idempotencyService.execute("send", senderUsername, idempotencyKey, request, () -> {
+            emailService.sendEmail(request, senderUsername);
+            return ResponseEntity.ok().build();
+        });
+    }
+
+    /**
+     * ✅ SEND ASYNC
+     * Journals the send and returns 202 with a delivery id right away;
+     * 503 when the delivery queue is full.
+     */
+    @PostMapping("/send/async")
+    public ResponseEntity<DeliveryStatusResponse> sendEmailAsync(
+            @Valid @RequestBody SendEmailRequest request,
+            Authentication authentication
+    ) {
+        Delivery delivery = deliveryQueueService.enqueue(request, authentication.getName());
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/emails/deliveries/" + delivery.getId()))
+                .body(new DeliveryStatusResponse(delivery));
+    }
+
+    /**
+     * ✅ DELIVERY QUEUE STATS
+     * Admin only (mailbox.admin-usernames), see SecurityConfig.
+     */
+    @GetMapping("/deliveries/stats")
+    public ResponseEntity<Map<String, Object>> getDeliveryStats() {
+        return ResponseEntity.ok(deliveryQueueService.getStats());
+    }
+
+    /**
+     * ✅ DELIVERY STATUS
+     */
+    @GetMapping("/deliveries/{deliveryId}")
+    public ResponseEntity<DeliveryStatusResponse> getDeliveryStatus(
+            @PathVariable String deliveryId,
+            Authentication authentication
+    ) {
+        return ResponseEntity.ok(deliveryQueueService.getStatus(deliveryId, authentication.getName()));
+    }
+
+    /**
+     * ✅ SEND TO MANY
+     * One ciphertext, one wrapped key per recipient; stored in a single batched insert.
+     */
+    @PostMapping("/send/batch")
+    public ResponseEntity<?> sendToMany(
+            @Valid @RequestBody BatchSendEmailRequest request,
+            Authentication authentication
+    ) {
+        List<Long> ids = emailService.sendToMany(request, authentication.getName()).stream()
+                .map(EmailMessage::getId)
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(Map.of("emailIds", ids));
     }
 
     /**
@@ -116,10 +355,14 @@ public class EmailController {
      * ✅ GET SPAM
      */
     @GetMapping("/spam")
-    public ResponseEntity<List<EmailDto>> getSpam(Authentication authentication) {
+    public ResponseEntity<MailboxPage> getSpam(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            Authentication authentication,
+            WebRequest request
+    ) {
         String username = authentication.getName();
-        List<EmailDto> spam = emailService.getSpam(username);
-        return ResponseEntity.ok(spam);
+        return conditional(username, request, () -> emailService.getSpam(username, cursor, limit));
     }
 
     /**
@@ -157,4 +400,31 @@ public class EmailController {
         emailService.restoreEmail(id, authentication.getName());
         return ResponseEntity.ok().build();
     }
+
+    /**
+     * ✅ BULK UPDATE
+     * One action (read, unread, delete, restore, spam, not-spam, permanent)
+     * for many messages at once; ids the caller does not own are skipped.
+     */
+    @PostMapping("/bulk/{action}")
+    public ResponseEntity<BulkMutationResponse> bulkUpdate(
+            @PathVariable String action,
+            @Valid @RequestBody BulkMutationRequest request,
+            Authentication authentication
+    ) {
+        int affected = emailService.bulkUpdate(
+                EmailService.BulkAction.from(action), request.getIds(), authentication.getName());
+        return ResponseEntity.ok(new BulkMutationResponse(affected));
+    }
+
+    private ResponseEntity<MailboxPage> conditional(String username, WebRequest request, Supplier<MailboxPage> page) {
+        // Taken before the query, so a concurrent change yields an older tag and a refetch later
+        String etag = emailService.mailboxETag(username);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(page.get());
+    }
 }
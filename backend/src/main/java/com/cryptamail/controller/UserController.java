@@ -3,8 +3,13 @@ package com.cryptamail.controller;
 import com.cryptamail.dto.PublicKeyResponse;
 import com.cryptamail.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.Duration;
 
 @RestController
 @RequestMapping("/api/users")
@@ -12,16 +17,24 @@ public class UserController {
     
     @Autowired
     private UserService userService;
+
+    // Kept short: after a rename the same address can belong to a different key
+    @Value("${mailbox.public-keys.max-age-seconds:60}")
+    private long publicKeyMaxAge;
     
     /**
      * Get user's public key by username or address
      * GET /api/users/public-key?username=alice
      * GET /api/users/public-key?address=alice@smail.in
+     *
+     * Cacheable by browsers and proxies for a short while; afterwards a
+     * matching If-None-Match is answered with 304.
      */
     @GetMapping("/public-key")
     public ResponseEntity<PublicKeyResponse> getPublicKey(
             @RequestParam(required = false) String username,
-            @RequestParam(required = false) String address) {
+            @RequestParam(required = false) String address,
+            WebRequest request) {
         
         try {
             PublicKeyResponse response;
@@ -34,7 +47,12 @@ public class UserController {
                 return ResponseEntity.badRequest().build();
             }
             
-            return ResponseEntity.ok(response);
+            if (request.checkNotModified(response.getEtag())) {
+                return null;
+            }
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.maxAge(Duration.ofSeconds(publicKeyMaxAge)).cachePublic())
+                    .body(response);
         } catch (Exception e) {
             return ResponseEntity.notFound().build();
         }
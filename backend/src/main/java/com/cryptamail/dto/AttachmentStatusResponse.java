@@ -10,4 +10,6 @@ public class AttachmentStatusResponse {
     private String status;
     private Integer totalChunks;
     private List<Integer> uploadedChunks;
+    private Integer receivedCount;
+    private List<int[]> missingRanges; // inclusive [from, to] index runs still to upload
 }
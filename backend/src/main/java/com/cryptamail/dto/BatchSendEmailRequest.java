@@ -0,0 +1,52 @@
+package com.cryptamail.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import java.util.*;
+import lombok.Data;
+
+/**
+ * One message to several recipients. The subject and body are encrypted once
+ * under a single symmetric key; only the wrapped key differs per recipient.
+ */
+@Data
+public class BatchSendEmailRequest {
+
+    @NotEmpty(message = "At least one recipient is required")
+    @Size(max = 100, message = "Too many recipients (max 100)")
+    @Valid
+    private List<Recipient> recipients;
+
+    @NotBlank(message = "Encrypted subject is required")
+    @Size(max = 10000, message = "Encrypted subject too large")
+    private String encryptedSubject;
+
+    @NotBlank(message = "Subject IV is required")
+    private String subjectIv;
+
+    @NotBlank(message = "Encrypted body is required")
+    @Size(max = 1000000, message = "Encrypted body too large (max 1MB)")
+    private String encryptedBody;
+
+    @NotBlank(message = "Body IV is required")
+    private String bodyIv;
+
+    @NotBlank(message = "Sender encrypted symmetric key is required")
+    private String senderEncryptedSymmetricKey;
+
+    private List<Long> attachmentIds;
+    private List<Long> cloudFileIds;
+
+    @Data
+    public static class Recipient {
+
+        @NotBlank(message = "Recipient username is required")
+        @Size(min = 1, max = 100, message = "Recipient username must be 1-100 characters")
+        private String toUsername;
+
+        @NotBlank(message = "Encrypted symmetric key is required")
+        private String encryptedSymmetricKey;
+    }
+}
@@ -0,0 +1,17 @@
+package com.cryptamail.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import java.util.*;
+import lombok.Data;
+
+/**
+ * Message ids for one bulk mailbox action (POST /api/emails/bulk/{action}).
+ */
+@Data
+public class BulkMutationRequest {
+
+    @NotEmpty(message = "At least one message id is required")
+    @Size(max = 500, message = "Too many messages (max 500)")
+    private List<Long> ids;
+}
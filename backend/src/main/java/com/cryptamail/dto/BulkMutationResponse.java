@@ -0,0 +1,12 @@
+package com.cryptamail.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkMutationResponse {
+    private int affected;
+}
@@ -0,0 +1,24 @@
+package com.cryptamail.dto;
+
+import com.cryptamail.model.Delivery;
+import com.cryptamail.model.DeliveryStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeliveryStatusResponse {
+    private String deliveryId;
+    private DeliveryStatus status;
+    private Long emailId;
+    private String error;
+    private LocalDateTime createdAt;
+
+    public DeliveryStatusResponse(Delivery delivery) {
+        this(delivery.getId(), delivery.getStatus(), delivery.getEmailId(), delivery.getError(), delivery.getCreatedAt());
+    }
+}
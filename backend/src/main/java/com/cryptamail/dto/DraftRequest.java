@@ -0,0 +1,37 @@
+package com.cryptamail.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import java.util.*;
+import lombok.Data;
+
+/**
+ * Autosaved draft content. Drafts are only readable by their author, so the
+ * symmetric key is wrapped for the sender alone until the draft is sent.
+ */
+@Data
+public class DraftRequest {
+
+    @NotBlank(message = "Encrypted subject is required")
+    @Size(max = 10000, message = "Encrypted subject too large")
+    private String encryptedSubject;
+
+    @NotBlank(message = "Subject IV is required")
+    private String subjectIv;
+
+    @NotBlank(message = "Encrypted body is required")
+    @Size(max = 1000000, message = "Encrypted body too large (max 1MB)")
+    private String encryptedBody;
+
+    @NotBlank(message = "Body IV is required")
+    private String bodyIv;
+
+    @NotBlank(message = "Sender encrypted symmetric key is required")
+    private String senderEncryptedSymmetricKey;
+
+    private List<Long> attachmentIds;
+    private List<Long> cloudFileIds;
+
+    // Version the client last saw; required when updating an existing draft
+    private Long version;
+}
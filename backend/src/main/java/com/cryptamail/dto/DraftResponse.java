@@ -0,0 +1,13 @@
+package com.cryptamail.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DraftResponse {
+    private Long id;
+    private long version;
+}
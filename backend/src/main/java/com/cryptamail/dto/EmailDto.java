@@ -32,6 +32,7 @@ public class EmailDto {
     private Boolean isRead;
     private Boolean isSender;
     private List<Long> attachmentIds;
+    private List<Long> cloudFileIds;
 
     /**
      * ✅ ADDED THIS CONSTRUCTOR
@@ -58,6 +59,28 @@ public class EmailDto {
         // Don't access collections in constructor to avoid lazy loading issues
         // Collections will be set in service layer
         this.attachmentIds = null;
+        this.cloudFileIds = null;
+    }
+    
+    /**
+     * Maps a folder listing header to EmailDto.
+     * encryptedBody and bodyIv stay null; clients fetch them via GET /api/emails/{id}.
+     */
+    public EmailDto(EmailHeader header) {
+        this.id = header.getId();
+        this.fromUsername = "loading...";
+        this.toUsername = "loading...";
+
+        this.encryptedSubject = header.getEncryptedSubject();
+        this.subjectIv = header.getSubjectIv();
+        this.encryptedSymmetricKey = header.getEncryptedSymmetricKey();
+        this.senderEncryptedSymmetricKey = header.getSenderEncryptedSymmetricKey();
+
+        this.timestamp = header.getTimestamp();
+        this.isRead = header.isRead();
+        this.isSender = false;
+        this.attachmentIds = null;
+        this.cloudFileIds = null;
     }
     
     // Add setters for manual username setting
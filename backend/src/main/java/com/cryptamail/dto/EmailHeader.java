@@ -0,0 +1,27 @@
+package com.cryptamail.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read model for folder listings: everything a client needs to render a
+ * mailbox row, but never the encrypted body (a LONGTEXT column).
+ *
+ * Built by JPQL constructor expressions in EmailRepository, so the field
+ * order here must match the SELECT NEW argument order.
+ */
+@Data
+@AllArgsConstructor
+public class EmailHeader {
+    private Long id;
+    private Long senderId;
+    private Long recipientId;
+    private String encryptedSubject;
+    private String subjectIv;
+    private String encryptedSymmetricKey;
+    private String senderEncryptedSymmetricKey;
+    private LocalDateTime timestamp;
+    private boolean read;
+}
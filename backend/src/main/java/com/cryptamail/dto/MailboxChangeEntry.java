@@ -0,0 +1,24 @@
+package com.cryptamail.dto;
+
+import com.cryptamail.model.MailboxChangeType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Latest state of one message that changed since the client's sequence number.
+ * UPSERT carries the header and the folders it is now listed in; REMOVE is a
+ * tombstone with only the id.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MailboxChangeEntry {
+    private long seq;
+    private Long emailId;
+    private MailboxChangeType type;
+    private List<String> folders;
+    private EmailDto header;
+}
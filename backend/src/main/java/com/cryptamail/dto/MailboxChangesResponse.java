@@ -0,0 +1,25 @@
+package com.cryptamail.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reply to GET /api/emails/changes. Clients store latestSeq and pass it as
+ * ?since= next time; when resyncRequired is set they refetch their folders instead.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MailboxChangesResponse {
+    private long latestSeq;
+    private boolean resyncRequired;
+    private List<MailboxChangeEntry> changes;
+
+    public static MailboxChangesResponse resync(long latestSeq) {
+        return new MailboxChangesResponse(latestSeq, true, new ArrayList<>());
+    }
+}
@@ -0,0 +1,15 @@
+package com.cryptamail.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MailboxCountsResponse {
+    private long inboxTotal;
+    private long unread;
+    private long spam;
+    private long trash;
+}
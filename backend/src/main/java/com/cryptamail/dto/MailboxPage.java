@@ -0,0 +1,20 @@
+package com.cryptamail.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One keyset page of a mailbox folder.
+ * nextCursor is null when there are no older messages.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MailboxPage {
+    private List<EmailDto> emails;
+    private String nextCursor;
+    private boolean hasMore;
+}
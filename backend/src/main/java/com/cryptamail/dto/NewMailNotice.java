@@ -0,0 +1,16 @@
+package com.cryptamail.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Pushed to the recipient's open /api/emails/stream connections when a message arrives.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NewMailNotice {
+    private EmailDto header;
+    private MailboxCountsResponse counts;
+}
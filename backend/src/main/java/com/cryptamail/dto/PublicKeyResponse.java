@@ -1,5 +1,6 @@
 package com.cryptamail.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -11,4 +12,7 @@ public class PublicKeyResponse {
     private String username;
     private String address;  // username@smail.in
     private String publicKey;
+
+    @JsonIgnore
+    private String etag;  // digest of publicKey, sent as the ETag header
 }
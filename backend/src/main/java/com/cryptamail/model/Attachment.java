@@ -34,6 +34,16 @@ public class Attachment {
     @Column(nullable = false)
     private Integer totalChunks;
 
+    // ChunkBitmap of received chunk indexes and its population count; null on rows
+    // created before the bitmap existed until their next chunk upload
+    @Column(name = "received_chunks", columnDefinition = "VARBINARY(8192)")
+    @lombok.ToString.Exclude
+    @com.fasterxml.jackson.annotation.JsonIgnore
+    private byte[] receivedChunks;
+
+    @Column(name = "received_count")
+    private Integer receivedCount;
+
     @Column(nullable = false)
     private Boolean quotaReserved = false;
 
@@ -4,6 +4,8 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 @Entity
 @Table(name = "attachment_chunks")
@@ -26,10 +28,18 @@ public class AttachmentChunk {
     @Column(nullable = false)
     private Integer chunkIndex;
 
-    @Lob
-    @Column(nullable = false, columnDefinition = "LONGBLOB") // Ensure ample space for 5MB+ chunks (MySQL limit: 4GB)
+    // Null unless the chunk is held by the database store
+    @JdbcTypeCode(SqlTypes.LONG32VARBINARY) // BLOB on H2, BYTEA on PostgreSQL
+    @Column(columnDefinition = "LONGBLOB") // Ensure ample space for 5MB+ chunks (MySQL limit: 4GB)
     private byte[] encryptedData;
 
+    // ChunkStore holding the bytes, and the store's reference to them
+    @Column(nullable = false, length = 16)
+    private String storage = "database";
+
+    @Column(length = 512)
+    private String location;
+
     @Column(nullable = false)
     private String iv;
 
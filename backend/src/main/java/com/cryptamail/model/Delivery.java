@@ -0,0 +1,64 @@
+package com.cryptamail.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+
+/**
+ * Journal entry of an asynchronous send (POST /api/emails/send/async).
+ * Written before the request is acknowledged, so PENDING rows survive a restart
+ * and are replayed; the payload is dropped once the delivery is settled.
+ */
+@Entity
+@Table(name = "delivery_queue")
+@Data
+@NoArgsConstructor
+public class Delivery {
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(nullable = false)
+    private String senderUsername;
+
+    @JdbcTypeCode(SqlTypes.LONG32VARCHAR)
+    @Column(columnDefinition = "LONGTEXT")
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private DeliveryStatus status;
+
+    private Long emailId;
+
+    @Column(length = 512)
+    private String error;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    public Delivery(String id, String senderUsername, String payload) {
+        this.id = id;
+        this.senderUsername = senderUsername;
+        this.payload = payload;
+        this.status = DeliveryStatus.PENDING;
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = this.createdAt;
+    }
+
+    public void settle(DeliveryStatus status, Long emailId, String error) {
+        this.status = status;
+        this.emailId = emailId;
+        this.error = error;
+        this.payload = null;
+        this.updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,7 @@
+package com.cryptamail.model;
+
+public enum DeliveryStatus {
+    PENDING,
+    DELIVERED,
+    FAILED
+}
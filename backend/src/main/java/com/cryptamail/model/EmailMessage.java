@@ -3,6 +3,8 @@ package com.cryptamail.model;
 import jakarta.persistence.*;
 import org.hibernate.annotations.Fetch;
 import org.hibernate.annotations.FetchMode;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -11,8 +13,10 @@ import java.util.List;
 @Table(name = "email_messages")
 public class EmailMessage {
 
+    // Pooled sequence rather than IDENTITY so Hibernate can batch inserts (multi-recipient sends)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "email_messages_seq")
+    @SequenceGenerator(name = "email_messages_seq", sequenceName = "email_messages_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -27,7 +31,8 @@ public class EmailMessage {
     @Column(nullable = false, length = 256)
     private String subjectIv;
 
-    @Lob
+    // Not @Lob: Hibernate binds LOBs as oid on PostgreSQL, but the column is CLOB on H2 and TEXT there
+    @JdbcTypeCode(SqlTypes.LONG32VARCHAR)
     @Column(nullable = false, columnDefinition = "LONGTEXT")
     private String encryptedBody;
 
@@ -67,6 +72,10 @@ public class EmailMessage {
     @Column(name = "spam_marked_at")
     private LocalDateTime spamMarkedAt;
 
+    // Bumped on every autosave; a stale client version is rejected
+    @Column(name = "draft_version", nullable = false)
+    private long draftVersion = 0;
+
     /* ---------------- ATTACHMENTS ---------------- */
 
     @ManyToMany(fetch = FetchType.LAZY)
@@ -162,6 +171,10 @@ public class EmailMessage {
 public LocalDateTime getTimestamp() {
         return timestamp;
     }
+
+    public void setTimestamp(LocalDateTime timestamp) {
+        this.timestamp = timestamp;
+    }
     
     // getCreatedAt method for compilation compatibility
     public LocalDateTime getCreatedAt() {
@@ -247,4 +260,12 @@ public LocalDateTime getTimestamp() {
     public void setSpamMarkedAt(LocalDateTime spamMarkedAt) {
         this.spamMarkedAt = spamMarkedAt;
     }
+
+    public long getDraftVersion() {
+        return draftVersion;
+    }
+
+    public void setDraftVersion(long draftVersion) {
+        this.draftVersion = draftVersion;
+    }
 }
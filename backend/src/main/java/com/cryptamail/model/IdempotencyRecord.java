@@ -0,0 +1,42 @@
+package com.cryptamail.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+
+/**
+ * Outcome of a request made with an Idempotency-Key header, keyed by
+ * endpoint scope, username and the client's key. The row is claimed before the
+ * request runs and completed with the response in the same transaction as the
+ * request's own writes.
+ */
+@Entity
+@Table(name = "idempotency_keys")
+@Data
+@NoArgsConstructor
+public class IdempotencyRecord {
+
+    @Id
+    @Column(length = 255)
+    private String id;
+
+    // SHA-256 of the request body; a key reused for a different request is rejected
+    @Column(nullable = false, length = 64)
+    private String requestHash;
+
+    @Column(nullable = false)
+    private boolean completed;
+
+    private Integer responseStatus;
+
+    @JdbcTypeCode(SqlTypes.LONG32VARCHAR)
+    @Column(columnDefinition = "LONGTEXT")
+    private String responseBody;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,47 @@
+package com.cryptamail.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One entry of a user's mailbox change log. seq is allocated from
+ * mailbox_counters.change_seq and is strictly increasing per user.
+ */
+@Entity
+@Table(name = "mailbox_changes")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MailboxChange {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    @Column(nullable = false)
+    private Long seq;
+
+    @Column(nullable = false)
+    private Long emailId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private MailboxChangeType changeType;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
+}
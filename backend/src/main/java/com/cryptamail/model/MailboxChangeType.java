@@ -0,0 +1,6 @@
+package com.cryptamail.model;
+
+public enum MailboxChangeType {
+    UPSERT,
+    REMOVE
+}
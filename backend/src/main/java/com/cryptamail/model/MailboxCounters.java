@@ -0,0 +1,39 @@
+package com.cryptamail.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Materialized per-user folder counters, kept in step with email_messages by
+ * MailboxCounterService so badges never require reading a folder.
+ * Also carries the user's mailbox change sequence (see MailboxChangeLog).
+ */
+@Entity
+@Table(name = "mailbox_counters")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MailboxCounters {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(nullable = false)
+    private long inboxTotal;
+
+    @Column(nullable = false)
+    private long unread;
+
+    @Column(nullable = false)
+    private long spam;
+
+    @Column(nullable = false)
+    private long trash;
+
+    /** Last sequence number handed out to this user's mailbox change log. */
+    @Column(nullable = false)
+    private long changeSeq;
+}
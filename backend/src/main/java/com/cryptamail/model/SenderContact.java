@@ -0,0 +1,97 @@
+package com.cryptamail.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * What the spam rules need to know about a sender -> recipient pair: when the
+ * sender first wrote to the recipient and how many messages they sent recently.
+ *
+ * The recent-send count is a sliding window approximated from two fixed windows:
+ * the count of the current window plus the previous window's count weighted by
+ * how much of it still overlaps the trailing WINDOW.
+ */
+@Entity
+@Table(name = "sender_contacts")
+@IdClass(SenderContact.Key.class)
+@Data
+@NoArgsConstructor
+public class SenderContact {
+
+    public static final Duration WINDOW = Duration.ofHours(1);
+
+    @Id
+    @Column(name = "sender_id")
+    private Long senderId;
+
+    @Id
+    @Column(name = "recipient_id")
+    private Long recipientId;
+
+    @Column(nullable = false)
+    private LocalDateTime firstContactAt;
+
+    @Column(nullable = false)
+    private LocalDateTime lastSentAt;
+
+    @Column(nullable = false)
+    private LocalDateTime windowStart;
+
+    @Column(nullable = false)
+    private int windowCount;
+
+    @Column(nullable = false)
+    private int previousWindowCount;
+
+    public SenderContact(Long senderId, Long recipientId, LocalDateTime now) {
+        this.senderId = senderId;
+        this.recipientId = recipientId;
+        this.firstContactAt = now;
+        this.lastSentAt = now;
+        this.windowStart = now;
+    }
+
+    /**
+     * @return false for a row created by SenderReputationService that no send has been
+     *         recorded on yet (a saved send always leaves windowCount above zero, and a
+     *         rolled window moves windowStart off firstContactAt)
+     */
+    public boolean hasSends() {
+        return windowCount > 0 || previousWindowCount > 0 || !windowStart.equals(firstContactAt);
+    }
+
+    /**
+     * @return estimated number of sends in the WINDOW before now
+     */
+    public double recentSends(LocalDateTime now) {
+        roll(now);
+        double elapsed = Math.max(0, Duration.between(windowStart, now).toMillis()) / (double) WINDOW.toMillis();
+        return previousWindowCount * (1.0 - elapsed) + windowCount;
+    }
+
+    public void recordSend(LocalDateTime now) {
+        roll(now);
+        windowCount++;
+        lastSentAt = now;
+    }
+
+    private void roll(LocalDateTime now) {
+        long windows = Duration.between(windowStart, now).toMillis() / WINDOW.toMillis();
+        if (windows <= 0) return;
+        previousWindowCount = windows == 1 ? windowCount : 0;
+        windowCount = 0;
+        windowStart = windowStart.plus(WINDOW.multipliedBy(windows));
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class Key implements Serializable {
+        private Long senderId;
+        private Long recipientId;
+    }
+}
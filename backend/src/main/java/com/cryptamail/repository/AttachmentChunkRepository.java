@@ -1,9 +1,15 @@
 package com.cryptamail.repository;
 
 import com.cryptamail.model.AttachmentChunk;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,4 +21,32 @@ public interface AttachmentChunkRepository extends JpaRepository<AttachmentChunk
     long countByAttachmentId(Long attachmentId);
     void deleteByAttachmentId(Long attachmentId);
     List<AttachmentChunk> findByAttachmentId(Long attachmentId);
+
+    // Uploaded indexes without loading chunk rows (encrypted_data may be a blob)
+    @Query("SELECT c.chunkIndex FROM AttachmentChunk c WHERE c.attachment.id = :attachmentId ORDER BY c.chunkIndex")
+    List<Integer> findChunkIndexes(@Param("attachmentId") Long attachmentId);
+
+    // Chunk metadata without the data column, for streaming an attachment in index order
+    interface ChunkRef {
+        Long getId();
+        Integer getChunkIndex();
+        String getIv();
+        String getStorage();
+        String getLocation();
+    }
+
+    @Query("SELECT c.id AS id, c.chunkIndex AS chunkIndex, c.iv AS iv, c.storage AS storage, c.location AS location " +
+           "FROM AttachmentChunk c WHERE c.attachment.id = :attachmentId AND c.chunkIndex > :afterIndex " +
+           "ORDER BY c.chunkIndex")
+    List<ChunkRef> findChunkRefs(@Param("attachmentId") Long attachmentId,
+                                 @Param("afterIndex") Integer afterIndex,
+                                 Pageable pageable);
+
+    @Query("SELECT c.encryptedData FROM AttachmentChunk c WHERE c.id = :id")
+    byte[] findDataById(@Param("id") Long id);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM AttachmentChunk c WHERE c.attachment.id IN :attachmentIds")
+    int deleteByAttachmentIdIn(@Param("attachmentIds") Collection<Long> attachmentIds);
 }
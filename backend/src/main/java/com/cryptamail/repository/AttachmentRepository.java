@@ -1,11 +1,18 @@
 package com.cryptamail.repository;
 
 import com.cryptamail.model.Attachment;
+import com.cryptamail.model.AttachmentStatus;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface AttachmentRepository extends JpaRepository<Attachment, Long> {
 
@@ -23,4 +30,45 @@ public interface AttachmentRepository extends JpaRepository<Attachment, Long> {
     boolean isLinkedToUserEmail(@Param("attachmentId") Long attachmentId, @Param("username") String username);
 
     List<Attachment> findByUploaderId(Long uploaderId);
+
+    /**
+     * The attachment, locked so concurrent chunk uploads update its received-chunk bitmap one at a time.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT a FROM Attachment a WHERE a.id = :id")
+    Optional<Attachment> findForUpdate(@Param("id") Long id);
+
+    /**
+     * The attachments among ids that uploaderId may link to a message.
+     */
+    @Query("SELECT a FROM Attachment a WHERE a.id IN :ids AND a.uploader.id = :uploaderId " +
+           "AND a.deleted = false AND a.status IN :statuses")
+    List<Attachment> findLinkable(@Param("ids") Collection<Long> ids,
+                                  @Param("uploaderId") Long uploaderId,
+                                  @Param("statuses") Collection<AttachmentStatus> statuses);
+
+    /**
+     * Of the given attachments, the live ones no message links to any more.
+     */
+    @Query("""
+        SELECT a.id FROM Attachment a
+        WHERE a.id IN :ids
+          AND a.deleted = false
+          AND NOT EXISTS (SELECT 1 FROM EmailMessage e JOIN e.attachments x WHERE x.id = a.id)
+    """)
+    List<Long> findUnlinkedIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT a.uploader.id AS uploaderId, SUM(a.totalSize) AS bytes FROM Attachment a " +
+           "WHERE a.id IN :ids GROUP BY a.uploader.id")
+    List<UploaderUsage> sumSizeByUploader(@Param("ids") Collection<Long> ids);
+
+    interface UploaderUsage {
+        Long getUploaderId();
+        Long getBytes();
+    }
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Attachment a SET a.deleted = true WHERE a.id IN :ids")
+    int markDeleted(@Param("ids") Collection<Long> ids);
 }
\ No newline at end of file
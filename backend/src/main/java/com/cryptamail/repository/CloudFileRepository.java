@@ -8,6 +8,7 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -30,4 +31,11 @@ public interface CloudFileRepository extends JpaRepository<CloudFile, Long> {
 
     @Query("SELECT cf FROM CloudFile cf WHERE cf.uploaderId = ?1 AND cf.isDeleted = false")
     List<CloudFile> findActiveFilesByUploader(Long uploaderId);
+
+    /**
+     * The cloud files among ids that uploaderId may link to a message: own, live and unexpired.
+     */
+    @Query("SELECT cf FROM CloudFile cf WHERE cf.id IN ?1 AND cf.uploaderId = ?2 AND cf.isDeleted = false " +
+           "AND (cf.expiresAt IS NULL OR cf.expiresAt > ?3)")
+    List<CloudFile> findLinkable(Collection<Long> ids, Long uploaderId, LocalDateTime now);
 }
\ No newline at end of file
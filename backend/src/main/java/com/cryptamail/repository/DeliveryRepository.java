@@ -0,0 +1,36 @@
+package com.cryptamail.repository;
+
+import com.cryptamail.model.Delivery;
+import com.cryptamail.model.DeliveryStatus;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface DeliveryRepository extends JpaRepository<Delivery, String> {
+
+    @Query("SELECT d.id FROM Delivery d WHERE d.status = :status AND d.createdAt < :before ORDER BY d.createdAt")
+    List<String> findIdsByStatusCreatedBefore(@Param("status") DeliveryStatus status,
+                                              @Param("before") LocalDateTime before);
+
+    /**
+     * Row-locked read; a worker only delivers a journal row it holds the lock on.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT d FROM Delivery d WHERE d.id = :id")
+    Optional<Delivery> findForUpdate(@Param("id") String id);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Delivery d WHERE d.status <> com.cryptamail.model.DeliveryStatus.PENDING AND d.updatedAt < :cutoff")
+    int deleteSettledBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -1,26 +1,166 @@
 package com.cryptamail.repository;
 
+import com.cryptamail.dto.EmailHeader;
 import com.cryptamail.model.EmailMessage;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface EmailRepository extends JpaRepository<EmailMessage, Long> {
-    @Query("SELECT e FROM EmailMessage e WHERE e.recipientId = ?1 AND e.isDraft = false AND e.deletedByRecipient = false")
-    List<EmailMessage> findInbox(Long userId);
 
-    @Query("SELECT e FROM EmailMessage e WHERE e.senderId = ?1 AND e.isDraft = false AND e.deletedBySender = false")
-    List<EmailMessage> findSent(Long userId);
+    /*
+     * Folder pages use keyset pagination over (timestamp, id): the caller passes the last
+     * row of the previous page and a Pageable that only carries the page size, so a fetch
+     * costs the same no matter how deep the user scrolls.
+     *
+     * They select an EmailHeader projection and never touch the encryptedBody LONGTEXT.
+     */
 
-    @Query("SELECT e FROM EmailMessage e WHERE e.senderId = ?1 AND e.isDraft = true")
-    List<EmailMessage> findDrafts(Long userId);
+    @Query("SELECT new com.cryptamail.dto.EmailHeader(e.id, e.senderId, e.recipientId, e.encryptedSubject, e.subjectIv, " +
+           "e.encryptedSymmetricKey, e.senderEncryptedSymmetricKey, e.timestamp, e.isRead) " +
+           "FROM EmailMessage e WHERE e.recipientId = :userId AND e.isDraft = false AND e.deletedByRecipient = false " +
+           "AND (e.timestamp < :beforeTs OR (e.timestamp = :beforeTs AND e.id < :beforeId)) " +
+           "ORDER BY e.timestamp DESC, e.id DESC")
+    List<EmailHeader> findInboxPage(@Param("userId") Long userId,
+                                    @Param("beforeTs") LocalDateTime beforeTs,
+                                    @Param("beforeId") Long beforeId,
+                                    Pageable pageable);
 
-    @Query("SELECT e FROM EmailMessage e WHERE (e.senderId = ?1 OR e.recipientId = ?1) AND " +
-           "((e.senderId = ?1 AND e.deletedBySender = true AND e.permanentlyDeletedBySender = false) OR " +
-           "(e.recipientId = ?1 AND e.deletedByRecipient = true AND e.permanentlyDeletedByRecipient = false))")
-    List<EmailMessage> findTrash(Long userId);
+    @Query("SELECT new com.cryptamail.dto.EmailHeader(e.id, e.senderId, e.recipientId, e.encryptedSubject, e.subjectIv, " +
+           "e.encryptedSymmetricKey, e.senderEncryptedSymmetricKey, e.timestamp, e.isRead) " +
+           "FROM EmailMessage e WHERE e.senderId = :userId AND e.isDraft = false AND e.deletedBySender = false " +
+           "AND (e.timestamp < :beforeTs OR (e.timestamp = :beforeTs AND e.id < :beforeId)) " +
+           "ORDER BY e.timestamp DESC, e.id DESC")
+    List<EmailHeader> findSentPage(@Param("userId") Long userId,
+                                   @Param("beforeTs") LocalDateTime beforeTs,
+                                   @Param("beforeId") Long beforeId,
+                                   Pageable pageable);
+
+    @Query("SELECT new com.cryptamail.dto.EmailHeader(e.id, e.senderId, e.recipientId, e.encryptedSubject, e.subjectIv, " +
+           "e.encryptedSymmetricKey, e.senderEncryptedSymmetricKey, e.timestamp, e.isRead) " +
+           "FROM EmailMessage e WHERE e.senderId = :userId AND e.isDraft = true AND e.deletedBySender = false " +
+           "AND (e.timestamp < :beforeTs OR (e.timestamp = :beforeTs AND e.id < :beforeId)) " +
+           "ORDER BY e.timestamp DESC, e.id DESC")
+    List<EmailHeader> findDraftsPage(@Param("userId") Long userId,
+                                     @Param("beforeTs") LocalDateTime beforeTs,
+                                     @Param("beforeId") Long beforeId,
+                                     Pageable pageable);
+
+    // Trash is one keyset page per side (idx_email_trash_sender / idx_email_trash_recipient),
+    // merged by the caller: an OR across the two would not be served by either index
+    @Query("SELECT new com.cryptamail.dto.EmailHeader(e.id, e.senderId, e.recipientId, e.encryptedSubject, e.subjectIv, " +
+           "e.encryptedSymmetricKey, e.senderEncryptedSymmetricKey, e.timestamp, e.isRead) " +
+           "FROM EmailMessage e WHERE e.senderId = :userId AND e.deletedBySender = true " +
+           "AND e.permanentlyDeletedBySender = false " +
+           "AND (e.timestamp < :beforeTs OR (e.timestamp = :beforeTs AND e.id < :beforeId)) " +
+           "ORDER BY e.timestamp DESC, e.id DESC")
+    List<EmailHeader> findTrashPageAsSender(@Param("userId") Long userId,
+                                            @Param("beforeTs") LocalDateTime beforeTs,
+                                            @Param("beforeId") Long beforeId,
+                                            Pageable pageable);
+
+    @Query("SELECT new com.cryptamail.dto.EmailHeader(e.id, e.senderId, e.recipientId, e.encryptedSubject, e.subjectIv, " +
+           "e.encryptedSymmetricKey, e.senderEncryptedSymmetricKey, e.timestamp, e.isRead) " +
+           "FROM EmailMessage e WHERE e.recipientId = :userId AND e.deletedByRecipient = true " +
+           "AND e.permanentlyDeletedByRecipient = false " +
+           "AND (e.timestamp < :beforeTs OR (e.timestamp = :beforeTs AND e.id < :beforeId)) " +
+           "ORDER BY e.timestamp DESC, e.id DESC")
+    List<EmailHeader> findTrashPageAsRecipient(@Param("userId") Long userId,
+                                               @Param("beforeTs") LocalDateTime beforeTs,
+                                               @Param("beforeId") Long beforeId,
+                                               Pageable pageable);
+
+    @Query("SELECT new com.cryptamail.dto.EmailHeader(e.id, e.senderId, e.recipientId, e.encryptedSubject, e.subjectIv, " +
+           "e.encryptedSymmetricKey, e.senderEncryptedSymmetricKey, e.timestamp, e.isRead) " +
+           "FROM EmailMessage e WHERE e.recipientId = :userId AND e.isSpam = true AND e.deletedByRecipient = false " +
+           "AND (e.timestamp < :beforeTs OR (e.timestamp = :beforeTs AND e.id < :beforeId)) " +
+           "ORDER BY e.timestamp DESC, e.id DESC")
+    List<EmailHeader> findSpamPage(@Param("userId") Long userId,
+                                   @Param("beforeTs") LocalDateTime beforeTs,
+                                   @Param("beforeId") Long beforeId,
+                                   Pageable pageable);
+
+    /*
+     * Whole-folder streams for GET /api/emails/export. Full entities (with bodies) are
+     * read through a forward-only cursor in fetch-size chunks; callers must consume them
+     * inside a transaction and clear the persistence context as they go.
+     */
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "100"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT e FROM EmailMessage e WHERE e.recipientId = :userId AND e.isDraft = false " +
+           "AND e.deletedByRecipient = false ORDER BY e.timestamp DESC, e.id DESC")
+    Stream<EmailMessage> streamInbox(@Param("userId") Long userId);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "100"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT e FROM EmailMessage e WHERE e.senderId = :userId AND e.isDraft = false " +
+           "AND e.deletedBySender = false ORDER BY e.timestamp DESC, e.id DESC")
+    Stream<EmailMessage> streamSent(@Param("userId") Long userId);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "100"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT e FROM EmailMessage e WHERE e.senderId = :userId AND e.isDraft = true " +
+           "AND e.deletedBySender = false ORDER BY e.timestamp DESC, e.id DESC")
+    Stream<EmailMessage> streamDrafts(@Param("userId") Long userId);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "100"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT e FROM EmailMessage e WHERE (e.senderId = :userId OR e.recipientId = :userId) AND " +
+           "((e.senderId = :userId AND e.deletedBySender = true AND e.permanentlyDeletedBySender = false) OR " +
+           "(e.recipientId = :userId AND e.deletedByRecipient = true AND e.permanentlyDeletedByRecipient = false)) " +
+           "ORDER BY e.timestamp DESC, e.id DESC")
+    Stream<EmailMessage> streamTrash(@Param("userId") Long userId);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "100"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT e FROM EmailMessage e WHERE e.recipientId = :userId AND e.isSpam = true " +
+           "AND e.deletedByRecipient = false ORDER BY e.timestamp DESC, e.id DESC")
+    Stream<EmailMessage> streamSpam(@Param("userId") Long userId);
+
+    @Query("SELECT e.id FROM EmailMessage e WHERE (e.senderId = :userId OR e.recipientId = :userId) AND " +
+           "((e.senderId = :userId AND e.deletedBySender = true AND e.permanentlyDeletedBySender = false) OR " +
+           "(e.recipientId = :userId AND e.deletedByRecipient = true AND e.permanentlyDeletedByRecipient = false))")
+    List<Long> findTrashIds(@Param("userId") Long userId);
+
+    // emptyTrash: one statement per side, same predicates as the trash folder
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailMessage e SET e.permanentlyDeletedBySender = true " +
+           "WHERE e.senderId = :userId AND e.deletedBySender = true AND e.permanentlyDeletedBySender = false")
+    int purgeTrashAsSender(@Param("userId") Long userId);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailMessage e SET e.permanentlyDeletedByRecipient = true " +
+           "WHERE e.recipientId = :userId AND e.deletedByRecipient = true AND e.permanentlyDeletedByRecipient = false")
+    int purgeTrashAsRecipient(@Param("userId") Long userId);
 
     @Query("SELECT e FROM EmailMessage e WHERE (e.senderId = ?1 OR e.recipientId = ?1) AND " +
            "((e.senderId = ?1 AND e.deletedBySender = true AND e.permanentlyDeletedBySender = false) OR " +
@@ -29,11 +169,143 @@ public interface EmailRepository extends JpaRepository<EmailMessage, Long> {
 
     List<EmailMessage> findAllBySenderIdOrRecipientId(Long senderId, Long recipientId);
 
-    @Query("SELECT e FROM EmailMessage e WHERE e.recipientId = ?1 AND e.isSpam = true AND e.deletedByRecipient = false ORDER BY e.timestamp DESC")
-    List<EmailMessage> findSpam(Long userId);
+    @Query("SELECT e.id AS emailId, a.id AS attachmentId FROM EmailMessage e JOIN e.attachments a WHERE e.id IN :emailIds")
+    List<AttachmentLink> findAttachmentLinks(@Param("emailIds") Collection<Long> emailIds);
+
+    interface AttachmentLink {
+        Long getEmailId();
+        Long getAttachmentId();
+    }
+
+    @Query("SELECT e.id AS emailId, c.id AS cloudFileId FROM EmailMessage e JOIN e.cloudFiles c WHERE e.id IN :emailIds")
+    List<CloudFileLink> findCloudFileLinks(@Param("emailIds") Collection<Long> emailIds);
+
+    interface CloudFileLink {
+        Long getEmailId();
+        Long getCloudFileId();
+    }
+
+    @Query("SELECT new com.cryptamail.dto.EmailHeader(e.id, e.senderId, e.recipientId, e.encryptedSubject, e.subjectIv, " +
+           "e.encryptedSymmetricKey, e.senderEncryptedSymmetricKey, e.timestamp, e.isRead) " +
+           "FROM EmailMessage e WHERE e.id IN :ids")
+    List<EmailHeader> findHeadersByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT e.id AS id, e.senderId AS senderId, e.recipientId AS recipientId, e.isDraft AS isDraft, " +
+           "e.isRead AS isRead, e.isSpam AS isSpam, e.deletedBySender AS deletedBySender, " +
+           "e.deletedByRecipient AS deletedByRecipient, e.permanentlyDeletedBySender AS permanentlyDeletedBySender, " +
+           "e.permanentlyDeletedByRecipient AS permanentlyDeletedByRecipient " +
+           "FROM EmailMessage e WHERE e.id IN :ids")
+    List<FolderState> findFolderStates(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT e.id AS id, e.senderId AS senderId, e.recipientId AS recipientId, e.isDraft AS isDraft, " +
+           "e.isRead AS isRead, e.isSpam AS isSpam, e.deletedBySender AS deletedBySender, " +
+           "e.deletedByRecipient AS deletedByRecipient, e.permanentlyDeletedBySender AS permanentlyDeletedBySender, " +
+           "e.permanentlyDeletedByRecipient AS permanentlyDeletedByRecipient " +
+           "FROM EmailMessage e WHERE e.senderId = :userId OR e.recipientId = :userId")
+    List<FolderState> findFolderStatesOfParticipant(@Param("userId") Long userId);
+
+    /**
+     * The flags that decide which folders a message appears in.
+     */
+    interface FolderState {
+        Long getId();
+        Long getSenderId();
+        Long getRecipientId();
+        Boolean getIsDraft();
+        Boolean getIsRead();
+        Boolean getIsSpam();
+        Boolean getDeletedBySender();
+        Boolean getDeletedByRecipient();
+        Boolean getPermanentlyDeletedBySender();
+        Boolean getPermanentlyDeletedByRecipient();
+    }
+
+    /*
+     * Bulk mutations. Ownership is part of the WHERE clause, so ids belonging to
+     * someone else are simply not matched; each side of a message (sender or
+     * recipient) has its own statement. Rows already in the target state are
+     * skipped so the returned counts only include real changes.
+     */
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailMessage e SET e.isRead = :read WHERE e.id IN :ids AND e.recipientId = :userId " +
+           "AND e.isDraft = false AND e.isRead <> :read")
+    int bulkSetRead(@Param("userId") Long userId, @Param("ids") Collection<Long> ids, @Param("read") boolean read);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailMessage e SET e.isSpam = true, e.spamMarkedAt = :now WHERE e.id IN :ids " +
+           "AND e.recipientId = :userId AND e.isDraft = false AND e.isSpam = false")
+    int bulkMarkSpam(@Param("userId") Long userId, @Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailMessage e SET e.isSpam = false, e.spamMarkedAt = null WHERE e.id IN :ids " +
+           "AND e.recipientId = :userId AND e.isSpam = true")
+    int bulkMarkNotSpam(@Param("userId") Long userId, @Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailMessage e SET e.deletedBySender = :deleted WHERE e.id IN :ids AND e.senderId = :userId " +
+           "AND e.permanentlyDeletedBySender = false AND e.deletedBySender <> :deleted")
+    int bulkSetDeletedBySender(@Param("userId") Long userId, @Param("ids") Collection<Long> ids,
+                               @Param("deleted") boolean deleted);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailMessage e SET e.deletedByRecipient = :deleted WHERE e.id IN :ids AND e.recipientId = :userId " +
+           "AND e.isDraft = false AND e.permanentlyDeletedByRecipient = false AND e.deletedByRecipient <> :deleted")
+    int bulkSetDeletedByRecipient(@Param("userId") Long userId, @Param("ids") Collection<Long> ids,
+                                  @Param("deleted") boolean deleted);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailMessage e SET e.deletedBySender = true, e.permanentlyDeletedBySender = true " +
+           "WHERE e.id IN :ids AND e.senderId = :userId AND e.permanentlyDeletedBySender = false")
+    int bulkPermanentlyDeleteBySender(@Param("userId") Long userId, @Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailMessage e SET e.deletedByRecipient = true, e.permanentlyDeletedByRecipient = true " +
+           "WHERE e.id IN :ids AND e.recipientId = :userId AND e.isDraft = false " +
+           "AND e.permanentlyDeletedByRecipient = false")
+    int bulkPermanentlyDeleteByRecipient(@Param("userId") Long userId, @Param("ids") Collection<Long> ids);
+
+    /*
+     * Compaction: rows nobody can see any more. A draft never reached its recipient,
+     * so the sender discarding it is enough.
+     */
+
+    @Query("SELECT e.id FROM EmailMessage e WHERE e.permanentlyDeletedBySender = true " +
+           "AND (e.permanentlyDeletedByRecipient = true OR e.isDraft = true)")
+    List<Long> findPurgeableIds(Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM email_attachments WHERE email_id IN (:ids)", nativeQuery = true)
+    int deleteAttachmentLinks(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM email_cloud_files WHERE email_id IN (:ids)", nativeQuery = true)
+    int deleteCloudFileLinks(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM EmailMessage e WHERE e.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * A live draft of senderId, locked so concurrent autosaves of it are applied one at a time.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e FROM EmailMessage e WHERE e.id = :id AND e.senderId = :senderId " +
+           "AND e.isDraft = true AND e.deletedBySender = false")
+    Optional<EmailMessage> findDraftForUpdate(@Param("id") Long id, @Param("senderId") Long senderId);
 
     @Query("SELECT e FROM EmailMessage e WHERE e.isSpam = true AND e.spamMarkedAt < ?1")
     List<EmailMessage> findSpamOlderThan(LocalDateTime cutoff);
 
     
-}
\ No newline at end of file
+}
@@ -0,0 +1,46 @@
+package com.cryptamail.repository;
+
+import com.cryptamail.model.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    /**
+     * Claim a key; fails with a constraint violation if it is already taken.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO idempotency_keys (id, request_hash, completed, created_at) " +
+                   "VALUES (:id, :requestHash, FALSE, :now)", nativeQuery = true)
+    int claim(@Param("id") String id, @Param("requestHash") String requestHash, @Param("now") LocalDateTime now);
+
+    /**
+     * Take over a claim that was never completed and is older than staleBefore, e.g.
+     * one left behind by a crash; returns 0 if it completed or is still fresh.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE IdempotencyRecord r SET r.requestHash = :requestHash, r.createdAt = :now " +
+           "WHERE r.id = :id AND r.completed = false AND r.createdAt < :staleBefore")
+    int reclaim(@Param("id") String id, @Param("requestHash") String requestHash,
+                @Param("now") LocalDateTime now, @Param("staleBefore") LocalDateTime staleBefore);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE IdempotencyRecord r SET r.completed = true, r.responseStatus = :status, r.responseBody = :body " +
+           "WHERE r.id = :id")
+    int complete(@Param("id") String id, @Param("status") int status, @Param("body") String body);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.createdAt < :cutoff")
+    int deleteOlderThan(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -0,0 +1,34 @@
+package com.cryptamail.repository;
+
+import com.cryptamail.model.MailboxChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface MailboxChangeRepository extends JpaRepository<MailboxChange, Long> {
+
+    @Query("SELECT c FROM MailboxChange c WHERE c.userId = :userId AND c.seq > :since AND c.seq <= :upTo " +
+           "ORDER BY c.seq ASC")
+    List<MailboxChange> findChangesBetween(@Param("userId") Long userId,
+                                           @Param("since") Long since,
+                                           @Param("upTo") Long upTo,
+                                           Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM MailboxChange c WHERE c.createdAt < :cutoff")
+    int deleteOlderThan(@Param("cutoff") LocalDateTime cutoff);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM MailboxChange c WHERE c.userId = :userId")
+    int deleteByUserId(@Param("userId") Long userId);
+}
@@ -0,0 +1,67 @@
+package com.cryptamail.repository;
+
+import com.cryptamail.model.MailboxCounters;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface MailboxCountersRepository extends JpaRepository<MailboxCounters, Long> {
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE MailboxCounters c SET c.inboxTotal = c.inboxTotal + :inbox, c.unread = c.unread + :unread, " +
+           "c.spam = c.spam + :spam, c.trash = c.trash + :trash WHERE c.userId = :userId")
+    int applyDelta(@Param("userId") Long userId,
+                   @Param("inbox") long inbox,
+                   @Param("unread") long unread,
+                   @Param("spam") long spam,
+                   @Param("trash") long trash);
+
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO mailbox_counters (user_id, inbox_total, unread, spam, trash) VALUES (:userId, 0, 0, 0, 0)",
+           nativeQuery = true)
+    int insertEmpty(@Param("userId") Long userId);
+
+    /**
+     * Reserve the next n change sequence numbers; the row stays locked until commit,
+     * so sequence numbers are handed out in commit order per user.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE MailboxCounters c SET c.changeSeq = c.changeSeq + :n WHERE c.userId = :userId")
+    int advanceChangeSeq(@Param("userId") Long userId, @Param("n") long n);
+
+    /**
+     * Lock a user's row without changing it, to keep the order in which a transaction
+     * takes counter rows fixed (see MailboxCounterService.apply).
+     */
+    @Query(value = "SELECT user_id FROM mailbox_counters WHERE user_id = :userId FOR UPDATE", nativeQuery = true)
+    Long lockRow(@Param("userId") Long userId);
+
+    @Query("SELECT c.changeSeq FROM MailboxCounters c WHERE c.userId = :userId")
+    Long findChangeSeq(@Param("userId") Long userId);
+
+    /**
+     * Recompute one user's counters from email_messages in a single statement.
+     * The predicates mirror the EmailRepository folder queries.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE MailboxCounters c SET " +
+           "c.inboxTotal = (SELECT COUNT(e) FROM EmailMessage e WHERE e.recipientId = :userId " +
+           "    AND e.isDraft = false AND e.deletedByRecipient = false), " +
+           "c.unread = (SELECT COUNT(e) FROM EmailMessage e WHERE e.recipientId = :userId " +
+           "    AND e.isDraft = false AND e.deletedByRecipient = false AND e.isRead = false), " +
+           "c.spam = (SELECT COUNT(e) FROM EmailMessage e WHERE e.recipientId = :userId " +
+           "    AND e.isSpam = true AND e.deletedByRecipient = false), " +
+           "c.trash = (SELECT COUNT(e) FROM EmailMessage e WHERE " +
+           "    (e.senderId = :userId AND e.deletedBySender = true AND e.permanentlyDeletedBySender = false) OR " +
+           "    (e.recipientId = :userId AND e.deletedByRecipient = true AND e.permanentlyDeletedByRecipient = false)) " +
+           "WHERE c.userId = :userId")
+    int recompute(@Param("userId") Long userId);
+}
@@ -0,0 +1,38 @@
+package com.cryptamail.repository;
+
+import com.cryptamail.model.SenderContact;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface SenderContactRepository extends JpaRepository<SenderContact, SenderContact.Key> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM SenderContact c WHERE c.senderId = :senderId AND c.recipientId = :recipientId")
+    Optional<SenderContact> findForUpdate(@Param("senderId") Long senderId, @Param("recipientId") Long recipientId);
+
+    /**
+     * Create the row of a pair with no sends yet; fails with a constraint violation if it exists.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO sender_contacts (sender_id, recipient_id, first_contact_at, last_sent_at, " +
+                   "window_start, window_count, previous_window_count) " +
+                   "VALUES (:senderId, :recipientId, :now, :now, :now, 0, 0)", nativeQuery = true)
+    int insert(@Param("senderId") Long senderId, @Param("recipientId") Long recipientId,
+               @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM SenderContact c WHERE c.senderId = :userId OR c.recipientId = :userId")
+    int deleteByUserId(@Param("userId") Long userId);
+}
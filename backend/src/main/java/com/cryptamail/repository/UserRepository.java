@@ -2,8 +2,11 @@ package com.cryptamail.repository;
 
 import com.cryptamail.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.Optional;
 
 @Repository
@@ -13,4 +16,38 @@ public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByGoogleId(String googleId);
     
     java.util.List<User> findByUsernameStartingWith(String prefix);
+
+    /**
+     * Resolve many user ids in one round trip without loading key material columns.
+     */
+    @Query("SELECT u.id AS id, u.username AS username FROM User u WHERE u.id IN :ids")
+    java.util.List<UsernameView> findUsernamesByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT u.id AS id, u.username AS username FROM User u WHERE u.username IN :usernames")
+    java.util.List<UsernameView> findIdsByUsernameIn(@Param("usernames") Collection<String> usernames);
+
+    @Query("SELECT u.id FROM User u WHERE u.id > :afterId ORDER BY u.id")
+    java.util.List<Long> findIdsAfter(@Param("afterId") Long afterId, org.springframework.data.domain.Pageable pageable);
+
+    /**
+     * Public key only; the User entity would also load the encrypted private key.
+     */
+    @Query("SELECT u.username AS username, u.publicKey AS publicKey FROM User u WHERE u.username = :username")
+    Optional<PublicKeyView> findPublicKeyByUsername(@Param("username") String username);
+
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.transaction.annotation.Transactional
+    @Query("UPDATE User u SET u.storageUsed = CASE WHEN u.storageUsed > :bytes THEN u.storageUsed - :bytes ELSE 0 END " +
+           "WHERE u.id = :userId")
+    int releaseStorage(@Param("userId") Long userId, @Param("bytes") long bytes);
+
+    interface UsernameView {
+        Long getId();
+        String getUsername();
+    }
+
+    interface PublicKeyView {
+        String getUsername();
+        String getPublicKey();
+    }
 }
@@ -1,5 +1,6 @@
 package com.cryptamail.security;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -11,6 +12,10 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.DispatcherTypeRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -57,9 +62,16 @@ public class SecurityConfig {
             // 3. Authorization Rules
             .authorizeHttpRequests(auth -> auth
                 .requestMatchers(org.springframework.http.HttpMethod.OPTIONS, "/**").permitAll()
+                // Async dispatches of the streaming endpoints were already authenticated on the initial request
+                .requestMatchers(new AndRequestMatcher(
+                        new DispatcherTypeRequestMatcher(DispatcherType.ASYNC),
+                        new OrRequestMatcher(
+                                new AntPathRequestMatcher("/api/emails/stream"),
+                                new AntPathRequestMatcher("/api/emails/export")))).permitAll()
                 .requestMatchers("/api/auth/**").permitAll()
                 .requestMatchers("/api/users/public-key").permitAll()
                 .requestMatchers("/h2-console/**").permitAll() // Allow H2 Console
+                .requestMatchers("/api/emails/deliveries/stats").hasRole("ADMIN")
                 .anyRequest().authenticated()
             )
             // 4. H2 Console Fix: Allow frames from same origin
@@ -90,7 +102,8 @@ public class SecurityConfig {
         config.setAllowedOrigins(List.of(allowedOrigins.split(",")));
         config.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE", "PATCH", "OPTIONS"));
         config.setAllowedHeaders(List.of("*"));
-        config.setExposedHeaders(List.of("Authorization", "Content-Type"));
+        config.setExposedHeaders(List.of("Authorization", "Content-Type", "ETag", "Idempotent-Replayed",
+                "Content-Range", "Accept-Ranges", "Content-Length", "X-Chunk-Iv", "X-Chunk-Size", "X-Chunk-Count"));
         config.setAllowCredentials(true);
         config.setMaxAge(3600L);
 
@@ -25,6 +25,9 @@ public class AttachmentCleanupService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ChunkStorage chunkStorage;
+
     // Run every hour
     @Scheduled(fixedRate = 3600000)
     @Transactional
@@ -38,8 +41,8 @@ public class AttachmentCleanupService {
             // Better to iterate or use bulk delete if defined. 
             // For now, let's fetch and delete or define a delete method in repo.
             // Using standard JPA deleteInBatch if list is loaded, or custom query.
-            var chunks = chunkRepository.findByAttachmentIdOrderByChunkIndexAsc(attachment.getId());
-            chunkRepository.deleteAllInBatch(chunks);
+            chunkRepository.deleteByAttachmentIdIn(List.of(attachment.getId()));
+            chunkStorage.deleteAll(List.of(attachment.getId()));
 
             // 2. Release Quota if reserved
             if (Boolean.TRUE.equals(attachment.getQuotaReserved())) {
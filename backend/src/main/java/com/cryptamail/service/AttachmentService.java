@@ -10,15 +10,28 @@ import com.cryptamail.model.User;
 import com.cryptamail.repository.AttachmentChunkRepository;
 import com.cryptamail.repository.AttachmentRepository;
 import com.cryptamail.repository.UserRepository;
+import com.cryptamail.util.ChunkBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.Base64;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 @Service
 public class AttachmentService {
@@ -26,15 +39,30 @@ public class AttachmentService {
     private final AttachmentRepository attachmentRepository;
     private final AttachmentChunkRepository chunkRepository;
     private final UserRepository userRepository;
+    private final ChunkStorage chunkStorage;
+    private final TransactionTemplate tx;
+    private final long maxChunkBytes;
+    private final int contentReadAhead;
+    private final int maxChunks;
 
     public AttachmentService(
             AttachmentRepository attachmentRepository,
             AttachmentChunkRepository chunkRepository,
-            UserRepository userRepository
+            UserRepository userRepository,
+            ChunkStorage chunkStorage,
+            PlatformTransactionManager transactionManager,
+            @Value("${attachment.upload.max-chunk-bytes:16777216}") long maxChunkBytes,
+            @Value("${attachment.download.read-ahead-chunks:32}") int contentReadAhead,
+            @Value("${attachment.upload.max-chunks:65536}") int maxChunks
     ) {
         this.attachmentRepository = attachmentRepository;
         this.chunkRepository = chunkRepository;
         this.userRepository = userRepository;
+        this.chunkStorage = chunkStorage;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.maxChunkBytes = maxChunkBytes;
+        this.contentReadAhead = contentReadAhead;
+        this.maxChunks = maxChunks;
     }
 
     /* =========================================================
@@ -54,10 +82,18 @@ public class AttachmentService {
                 "File size cannot exceed 1GB. For larger files, consider using cloud storage.");
         }
 
+        if (request.getTotalChunks() == null || request.getTotalChunks() < 1
+                || request.getTotalChunks() > maxChunks) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "Total chunks must be between 1 and " + maxChunks);
+        }
+
         Attachment attachment = new Attachment();
         attachment.setStatus(AttachmentStatus.INIT);
         attachment.setTotalSize(request.getTotalSize());
         attachment.setTotalChunks(request.getTotalChunks());
+        attachment.setReceivedChunks(ChunkBitmap.empty(request.getTotalChunks()).toBytes());
+        attachment.setReceivedCount(0);
 
         // Store plain filename as encrypted filename if not provided encrypted version
         if (request.getEncryptedFilename() != null && !request.getEncryptedFilename().isEmpty()) {
@@ -86,7 +122,6 @@ public class AttachmentService {
     /* =========================================================
        UPLOAD CHUNK (IDEMPOTENT)
        ========================================================= */
-    @Transactional
     public void uploadChunk(Long attachmentId, UploadChunkRequest request, String username) {
         try {
             // Validate request
@@ -94,13 +129,6 @@ public class AttachmentService {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid chunk request");
             }
 
-            Attachment attachment = getOwnedAttachment(attachmentId, username);
-
-            // Check if chunk already exists (idempotent)
-            if (chunkRepository.existsByAttachmentIdAndChunkIndex(attachmentId, request.getChunkIndex())) {
-                return; // Already uploaded, skip
-            }
-
             // Validate and decode Base64 encrypted data
             String encryptedDataB64 = request.getEncryptedData();
             if (encryptedDataB64 == null || encryptedDataB64.trim().isEmpty()) {
@@ -116,32 +144,11 @@ public class AttachmentService {
 
             // Validate IV
             String iv = request.getIv();
-            if (iv == null || iv.trim().isEmpty()) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "IV cannot be empty");
-            }
-
-            // Try to decode IV as well to validate it's valid Base64
-            try {
-                Base64.getDecoder().decode(iv);
-            } catch (IllegalArgumentException e) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Base64 encoded IV");
-            }
-
-            // Create and save chunk
-            AttachmentChunk chunk = new AttachmentChunk();
-            chunk.setAttachment(attachment);
-            chunk.setChunkIndex(request.getChunkIndex());
-            chunk.setEncryptedData(encryptedData); // Store as bytes
-            chunk.setIv(iv); // Store as Base64 string
-            chunk.setSize(request.getSize() != null ? request.getSize() : (long) encryptedData.length);
+            validateIv(iv);
 
-            chunkRepository.save(chunk);
-
-            // Update attachment status
-            if (attachment.getStatus() == AttachmentStatus.INIT) {
-                attachment.setStatus(AttachmentStatus.UPLOADING);
-                attachmentRepository.save(attachment);
-            }
+            storeChunk(attachmentId, request.getChunkIndex(), iv,
+                    request.getSize() != null ? request.getSize() : (long) encryptedData.length,
+                    new ByteArrayInputStream(encryptedData), encryptedData.length, username);
 
         } catch (ResponseStatusException e) {
             throw e;
@@ -151,6 +158,24 @@ public class AttachmentService {
         }
     }
 
+    /* =========================================================
+       UPLOAD CHUNK, RAW BODY (IDEMPOTENT)
+       ========================================================= */
+    /**
+     * Streams a binary chunk body into chunk storage without holding it in memory
+     * (except for the database store).
+     */
+    public void uploadChunk(Long attachmentId, Integer index, String iv, long size,
+                            InputStream body, String username) {
+        if (size <= 0 || size > maxChunkBytes) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Chunk size must be between 1 and " + maxChunkBytes + " bytes");
+        }
+        validateIv(iv);
+
+        storeChunk(attachmentId, index, iv, size, body, size, username);
+    }
+
     /* =========================================================
        STATUS (RESUME SUPPORT)
        ========================================================= */
@@ -158,16 +183,14 @@ public class AttachmentService {
     public AttachmentStatusResponse getStatus(Long attachmentId, String username) {
         Attachment attachment = getOwnedAttachment(attachmentId, username);
 
-        List<Integer> uploaded = chunkRepository
-                .findByAttachmentIdOrderByChunkIndexAsc(attachmentId)
-                .stream()
-                .map(AttachmentChunk::getChunkIndex)
-                .collect(Collectors.toList());
+        ChunkBitmap received = receivedBitmap(attachment);
 
         return new AttachmentStatusResponse(
                 attachment.getStatus().name(),
                 attachment.getTotalChunks(),
-                uploaded
+                received.setIndexes(),
+                receivedCount(attachment, received),
+                received.missingRanges()
         );
     }
 
@@ -178,7 +201,9 @@ public class AttachmentService {
     public void completeUpload(Long attachmentId, String username) {
         Attachment attachment = getOwnedAttachment(attachmentId, username);
 
-        long uploaded = chunkRepository.countByAttachmentId(attachmentId);
+        int uploaded = attachment.getReceivedCount() != null
+                ? attachment.getReceivedCount()
+                : receivedCount(attachment, receivedBitmap(attachment));
         if (uploaded != attachment.getTotalChunks()) {
             throw new ResponseStatusException(
                     HttpStatus.BAD_REQUEST, "Missing chunks");
@@ -193,24 +218,7 @@ public class AttachmentService {
        ========================================================= */
     @Transactional(readOnly = true)
     public UploadChunkRequest getChunk(Long attachmentId, Integer index, String username) {
-        Attachment attachment = attachmentRepository.findById(attachmentId)
-                .orElseThrow(() ->
-                        new ResponseStatusException(HttpStatus.NOT_FOUND, "Attachment not found"));
-
-        // Check if user is the uploader
-        boolean isUploader = attachment.getUploader() != null &&
-                            attachment.getUploader().getUsername() != null &&
-                            attachment.getUploader().getUsername().equalsIgnoreCase(username);
-
-        if (!isUploader) {
-            // Check if user is linked to this attachment via email
-            boolean isLinked = attachmentRepository.isLinkedToUserEmail(attachmentId, username.toLowerCase());
-
-            if (!isLinked) {
-                throw new ResponseStatusException(HttpStatus.FORBIDDEN,
-                    "Unauthorized: You do not have access to this attachment");
-            }
-        }
+        getReadableAttachment(attachmentId, username);
 
         AttachmentChunk chunk = chunkRepository
                 .findByAttachmentIdAndChunkIndex(attachmentId, index)
@@ -220,35 +228,113 @@ public class AttachmentService {
         UploadChunkRequest dto = new UploadChunkRequest();
         dto.setChunkIndex(chunk.getChunkIndex());
         // Convert bytes to Base64 for transmission
-        dto.setEncryptedData(Base64.getEncoder().encodeToString(chunk.getEncryptedData()));
+        dto.setEncryptedData(Base64.getEncoder().encodeToString(chunkStorage.read(chunk)));
         dto.setIv(chunk.getIv()); // Already stored as Base64
         dto.setSize(chunk.getSize());
         return dto;
     }
 
     /* =========================================================
-       METADATA (LAZY LOAD SAFE)
+       DOWNLOAD CHUNK, RAW BYTES (RECIPIENT + SENDER)
        ========================================================= */
+    /**
+     * A chunk the caller may read, with the number of stored ciphertext bytes.
+     */
+    public record ChunkDownload(AttachmentChunk chunk, long length) {
+    }
+
     @Transactional(readOnly = true)
-    public Attachment getAttachmentMetadata(Long id, String username) {
-        Attachment attachment = attachmentRepository.findById(id)
+    public ChunkDownload openChunk(Long attachmentId, Integer index, String username) {
+        getReadableAttachment(attachmentId, username);
+
+        AttachmentChunk chunk = chunkRepository
+                .findByAttachmentIdAndChunkIndex(attachmentId, index)
                 .orElseThrow(() ->
-                        new ResponseStatusException(HttpStatus.NOT_FOUND, "Attachment not found"));
+                        new ResponseStatusException(HttpStatus.NOT_FOUND, "Chunk not found"));
+        return new ChunkDownload(chunk, chunkStorage.length(chunk));
+    }
 
-        // Check if user is the uploader
-        boolean isUploader = attachment.getUploader() != null &&
-                            attachment.getUploader().getUsername() != null &&
-                            attachment.getUploader().getUsername().equalsIgnoreCase(username);
+    /**
+     * Copy part of a chunk to target; file-backed chunks go through FileChannel.transferTo.
+     */
+    public void transferChunk(ChunkDownload download, long position, long count, WritableByteChannel target)
+            throws IOException {
+        chunkStorage.transferTo(download.chunk(), position, count, target);
+    }
 
-        if (!isUploader) {
-            // Check if user is linked to this attachment via email
-            boolean isLinked = attachmentRepository.isLinkedToUserEmail(id, username.toLowerCase());
+    /**
+     * @return the chunk's file when it is file-backed, so the container can send it itself
+     */
+    public Optional<Path> chunkFile(ChunkDownload download) {
+        return chunkStorage.localFile(download.chunk());
+    }
 
-            if (!isLinked) {
-                throw new ResponseStatusException(HttpStatus.FORBIDDEN,
-                    "Unauthorized: You do not have access to this attachment");
+    /* =========================================================
+       DOWNLOAD WHOLE ATTACHMENT (RECIPIENT + SENDER)
+       ========================================================= */
+    /**
+     * A completed attachment the caller may read.
+     */
+    public record ContentDownload(Long attachmentId, int totalChunks) {
+    }
+
+    @Transactional(readOnly = true)
+    public ContentDownload openContent(Long attachmentId, String username) {
+        Attachment attachment = getReadableAttachment(attachmentId, username);
+        if (attachment.getStatus() != AttachmentStatus.COMPLETED) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Attachment upload is not complete");
+        }
+        return new ContentDownload(attachmentId, attachment.getTotalChunks());
+    }
+
+    /**
+     * Write every chunk in index order as a frame: u32 ciphertext length, u16 IV length,
+     * IV bytes, ciphertext (big-endian). Chunk metadata is read ahead a bounded page at
+     * a time and each chunk's data goes straight from its store to out, so memory stays
+     * constant whatever the attachment size. Runs outside any transaction.
+     */
+    public void streamContent(ContentDownload download, OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + Short.BYTES);
+        int afterIndex = -1;
+        int sent = 0;
+        List<AttachmentChunkRepository.ChunkRef> page;
+        do {
+            page = chunkRepository.findChunkRefs(download.attachmentId(), afterIndex, PageRequest.of(0, contentReadAhead));
+            for (AttachmentChunkRepository.ChunkRef ref : page) {
+                AttachmentChunk chunk = new AttachmentChunk();
+                chunk.setId(ref.getId());
+                chunk.setChunkIndex(ref.getChunkIndex());
+                chunk.setStorage(ref.getStorage());
+                chunk.setLocation(ref.getLocation());
+
+                long length = chunkStorage.length(chunk);
+                byte[] iv = Base64.getDecoder().decode(ref.getIv());
+                header.clear();
+                header.putInt(Math.toIntExact(length)).putShort((short) iv.length).flip();
+                out.write(header.array(), 0, header.limit());
+                out.write(iv);
+                chunkStorage.transferTo(chunk, 0, length, target);
+
+                afterIndex = ref.getChunkIndex();
+                sent++;
             }
+        } while (page.size() == contentReadAhead);
+
+        if (sent != download.totalChunks()) {
+            // The response is already committed; failing aborts it so the client sees a truncated stream
+            throw new IOException("Attachment " + download.attachmentId() + " has " + sent
+                    + " of " + download.totalChunks() + " chunks");
         }
+        out.flush();
+    }
+
+    /* =========================================================
+       METADATA (LAZY LOAD SAFE)
+       ========================================================= */
+    @Transactional(readOnly = true)
+    public Attachment getAttachmentMetadata(Long id, String username) {
+        Attachment attachment = getReadableAttachment(id, username);
 
         // Don't load chunks for efficiency
         attachment.setChunks(null);
@@ -265,6 +351,7 @@ public class AttachmentService {
         if (attachment.isDeleted()) return;
 
         chunkRepository.deleteByAttachmentId(id);
+        chunkStorage.deleteAll(List.of(id));
 
         User user = attachment.getUploader();
         user.setStorageUsed(
@@ -279,6 +366,124 @@ public class AttachmentService {
     /* =========================================================
        HELPERS
        ========================================================= */
+    /**
+     * Store one chunk and mark it received. The body is read outside any transaction,
+     * so a slow client does not pin a database connection; the row is saved once the
+     * data is durable, under a lock on the attachment so the received-chunk bitmap
+     * and count are updated atomically. Used by both the JSON and the binary upload.
+     * A chunk already received is a no-op: the first upload to claim an index under
+     * the lock keeps it, and any other upload of that index, or one whose row fails
+     * to save, discards the data it wrote.
+     */
+    private void storeChunk(Long attachmentId, Integer index, String iv, long recordedSize,
+                            InputStream body, long length, String username) {
+        if (index == null || index < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid chunk index");
+        }
+
+        Attachment attachment = tx.execute(status -> {
+            Attachment owned = getOwnedAttachment(attachmentId, username);
+            if (index >= owned.getTotalChunks()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Chunk index must be below " + owned.getTotalChunks());
+            }
+            return receivedBitmap(owned).isSet(index) ? null : owned;
+        });
+        if (attachment == null) {
+            return; // Already uploaded, skip
+        }
+
+        AttachmentChunk chunk = new AttachmentChunk();
+        chunk.setAttachment(attachment);
+        chunk.setChunkIndex(index);
+        chunk.setIv(iv); // Store as Base64 string
+        chunk.setSize(recordedSize);
+        chunkStorage.write(chunk, body, length);
+
+        Boolean saved;
+        try {
+            saved = tx.execute(status -> {
+                Attachment locked = attachmentRepository.findForUpdate(attachmentId)
+                        .orElseThrow(() ->
+                                new ResponseStatusException(HttpStatus.NOT_FOUND, "Attachment not found"));
+                ChunkBitmap received = receivedBitmap(locked);
+                int count = receivedCount(locked, received);
+                if (!received.set(index)) {
+                    return false; // A concurrent upload of this chunk saved its row first
+                }
+                chunkRepository.save(chunk);
+
+                locked.setReceivedChunks(received.toBytes());
+                locked.setReceivedCount(count + 1);
+                if (locked.getStatus() == AttachmentStatus.INIT) {
+                    locked.setStatus(AttachmentStatus.UPLOADING);
+                }
+                return true;
+            });
+        } catch (RuntimeException e) {
+            chunkStorage.discard(chunk);
+            throw e;
+        }
+        if (!Boolean.TRUE.equals(saved)) {
+            // Its IV belongs to the other upload's ciphertext, so this data must not be kept
+            chunkStorage.discard(chunk);
+        }
+    }
+
+    // Attachments created before the bitmap existed get theirs from the chunk rows
+    private ChunkBitmap receivedBitmap(Attachment attachment) {
+        if (attachment.getReceivedChunks() != null) {
+            return ChunkBitmap.of(attachment.getReceivedChunks(), attachment.getTotalChunks());
+        }
+        ChunkBitmap received = ChunkBitmap.empty(attachment.getTotalChunks());
+        for (Integer index : chunkRepository.findChunkIndexes(attachment.getId())) {
+            if (index >= 0 && index < attachment.getTotalChunks()) {
+                received.set(index);
+            }
+        }
+        return received;
+    }
+
+    private int receivedCount(Attachment attachment, ChunkBitmap received) {
+        return attachment.getReceivedCount() != null ? attachment.getReceivedCount() : received.setIndexes().size();
+    }
+
+    private void validateIv(String iv) {
+        if (iv == null || iv.trim().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "IV cannot be empty");
+        }
+
+        // Try to decode IV as well to validate it's valid Base64
+        try {
+            Base64.getDecoder().decode(iv);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Base64 encoded IV");
+        }
+    }
+
+    // Uploader, or a party to an email the attachment is linked to
+    private Attachment getReadableAttachment(Long id, String username) {
+        Attachment attachment = attachmentRepository.findById(id)
+                .orElseThrow(() ->
+                        new ResponseStatusException(HttpStatus.NOT_FOUND, "Attachment not found"));
+
+        // Check if user is the uploader
+        boolean isUploader = attachment.getUploader() != null &&
+                            attachment.getUploader().getUsername() != null &&
+                            attachment.getUploader().getUsername().equalsIgnoreCase(username);
+
+        if (!isUploader) {
+            // Check if user is linked to this attachment via email
+            boolean isLinked = attachmentRepository.isLinkedToUserEmail(id, username.toLowerCase());
+
+            if (!isLinked) {
+                throw new ResponseStatusException(HttpStatus.FORBIDDEN,
+                    "Unauthorized: You do not have access to this attachment");
+            }
+        }
+        return attachment;
+    }
+
     private Attachment getOwnedAttachment(Long id, String username) {
         Attachment attachment = attachmentRepository.findById(id)
                 .orElseThrow(() ->
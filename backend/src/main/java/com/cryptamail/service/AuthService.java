@@ -29,6 +29,18 @@ public class AuthService {
     @Autowired
     private JwtUtil jwtUtil;
     
+    @Autowired
+    private UserDirectory userDirectory;
+    
+    @Autowired
+    private MailboxCounterService mailboxCounterService;
+
+    @Autowired
+    private PublicKeyDirectory publicKeyDirectory;
+
+    @Autowired
+    private MailboxChangeLog mailboxChangeLog;
+    
     /**
      * Register a new user with encrypted private key
      */
@@ -56,6 +68,9 @@ public class AuthService {
         user.setKdfIterations(epk.getIterations() != null ? epk.getIterations() : 200000);
         
         user = userRepository.save(user);
+        mailboxCounterService.initialize(user.getId());
+        // Clears a cached "unknown user" for this name
+        publicKeyDirectory.evict(username);
         
         // Generate JWT token
         String token = jwtUtil.generateToken(username);
@@ -105,6 +120,12 @@ public class AuthService {
                     throw new RuntimeException("Username already taken");
                 }
                 user.setUsername(newUsername);
+                // Mailbox listings cache id <-> username
+                userDirectory.evict(user.getId(), currentUsername);
+                publicKeyDirectory.evict(currentUsername);
+                publicKeyDirectory.evict(newUsername);
+                // Listings show the new name, so folder ETags and delta sync must move on
+                mailboxChangeLog.recordRename(user.getId());
             }
         }
 
@@ -202,6 +223,8 @@ public class AuthService {
             user.setKdfIterations(200000);
 
             User savedUser = userRepository.save(user);
+            mailboxCounterService.initialize(savedUser.getId());
+            publicKeyDirectory.evict(username);
             String token = jwtUtil.generateToken(savedUser.getUsername());
 
             return LoginResponse.builder()
@@ -0,0 +1,156 @@
+package com.cryptamail.service;
+
+import com.cryptamail.model.AttachmentChunk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Routes chunk data to the configured {@link ChunkStore}.
+ *
+ * New chunks go to the store selected by attachment.storage.provider; reads go to
+ * whichever store the chunk row names, so switching providers needs no migration.
+ * Deletion of stored data waits for the surrounding transaction to commit, so a
+ * rolled-back delete never leaves rows pointing at missing files.
+ */
+@Service
+public class ChunkStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkStorage.class);
+
+    private final Map<String, ChunkStore> stores = new HashMap<>();
+    private final ChunkStore writeStore;
+
+    public ChunkStorage(
+            List<ChunkStore> stores,
+            @Value("${attachment.storage.provider:filesystem}") String provider
+    ) {
+        stores.forEach(store -> this.stores.put(store.name(), store));
+        this.writeStore = this.stores.get(provider);
+        if (writeStore == null) {
+            throw new IllegalStateException("Unknown attachment.storage.provider: " + provider
+                    + " (expected one of " + this.stores.keySet() + ")");
+        }
+    }
+
+    public void write(AttachmentChunk chunk, byte[] data) {
+        write(chunk, new ByteArrayInputStream(data), data.length);
+    }
+
+    /**
+     * Store exactly size bytes from body as the chunk's data.
+     *
+     * @throws IllegalArgumentException if body is shorter or longer than size
+     */
+    public void write(AttachmentChunk chunk, InputStream body, long size) {
+        chunk.setStorage(writeStore.name());
+        try {
+            writeStore.write(chunk, Channels.newChannel(body), size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store chunk " + chunk.getChunkIndex(), e);
+        }
+    }
+
+    public byte[] read(AttachmentChunk chunk) {
+        try {
+            return storeOf(chunk).read(chunk);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read chunk " + chunk.getChunkIndex(), e);
+        }
+    }
+
+    public long length(AttachmentChunk chunk) {
+        try {
+            return storeOf(chunk).length(chunk);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read chunk " + chunk.getChunkIndex(), e);
+        }
+    }
+
+    public void transferTo(AttachmentChunk chunk, long position, long count, WritableByteChannel target)
+            throws IOException {
+        storeOf(chunk).transferTo(chunk, position, count, target);
+    }
+
+    /**
+     * @return the file holding the chunk, when it is file-backed, for servers that can send files directly
+     */
+    public Optional<Path> localFile(AttachmentChunk chunk) {
+        if (storeOf(chunk) instanceof FileSystemChunkStore fileStore) {
+            try {
+                return Optional.of(fileStore.resolve(chunk));
+            } catch (IOException e) {
+                return Optional.empty();
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Drop the data of a written chunk that will not be saved, such as the loser of
+     * two concurrent uploads of one index. Failures only leave an unreferenced file.
+     */
+    public void discard(AttachmentChunk chunk) {
+        try {
+            storeOf(chunk).discard(chunk);
+        } catch (IOException e) {
+            logger.warn("Could not discard chunk {} data: {}", chunk.getChunkIndex(), e.getMessage());
+        }
+    }
+
+    /**
+     * Delete the stored data of attachments, after commit when called inside a transaction.
+     * The chunk rows are the caller's to delete.
+     */
+    public void deleteAll(Collection<Long> attachmentIds) {
+        if (attachmentIds.isEmpty()) return;
+        List<Long> ids = List.copyOf(attachmentIds);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    purge(ids);
+                }
+            });
+        } else {
+            purge(ids);
+        }
+    }
+
+    ChunkStore storeOf(AttachmentChunk chunk) {
+        ChunkStore store = stores.get(chunk.getStorage());
+        if (store == null) {
+            throw new IllegalStateException("Chunk stored in unknown store: " + chunk.getStorage());
+        }
+        return store;
+    }
+
+    private void purge(List<Long> attachmentIds) {
+        for (ChunkStore store : stores.values()) {
+            for (Long id : attachmentIds) {
+                try {
+                    store.deleteAll(id);
+                } catch (IOException e) {
+                    // Leftover files are harmless: paths are per attachment and never reused
+                    logger.warn("Could not delete {} data of attachment {}: {}", store.name(), id, e.getMessage());
+                }
+            }
+        }
+    }
+}
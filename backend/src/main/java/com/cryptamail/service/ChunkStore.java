@@ -0,0 +1,77 @@
+package com.cryptamail.service;
+
+import com.cryptamail.model.AttachmentChunk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Where the ciphertext of attachment chunks lives. The attachment_chunks row is
+ * always kept for the metadata (index, IV, size); {@link AttachmentChunk#getStorage()}
+ * names the store holding the bytes so rows written under an earlier setting stay
+ * readable. Callers go through {@link ChunkStorage}.
+ */
+public interface ChunkStore {
+
+    /**
+     * @return the value recorded in attachment_chunks.storage
+     */
+    String name();
+
+    /**
+     * Persist exactly size bytes read from source for chunk, durably, before returning.
+     * May set the chunk's location or data fields; the caller saves the row.
+     *
+     * @throws IllegalArgumentException if source holds fewer or more than size bytes
+     */
+    void write(AttachmentChunk chunk, ReadableByteChannel source, long size) throws IOException;
+
+    byte[] read(AttachmentChunk chunk) throws IOException;
+
+    /**
+     * @return the number of stored bytes, which may differ from the chunk's recorded size
+     */
+    long length(AttachmentChunk chunk) throws IOException;
+
+    /**
+     * Write count stored bytes starting at position to target.
+     */
+    void transferTo(AttachmentChunk chunk, long position, long count, WritableByteChannel target) throws IOException;
+
+    /**
+     * Remove the data written for a chunk whose row was never saved.
+     */
+    void discard(AttachmentChunk chunk) throws IOException;
+
+    /**
+     * Remove everything stored for an attachment. Missing data is not an error.
+     */
+    void deleteAll(Long attachmentId) throws IOException;
+
+    /**
+     * Read from source into buffer up to its limit, failing if the stream ends first.
+     */
+    static void fill(ReadableByteChannel source, ByteBuffer buffer, long size) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer) < 0) {
+                throw new IllegalArgumentException("Chunk body is shorter than " + size + " bytes");
+            }
+        }
+    }
+
+    /**
+     * Fail if source has data left after the declared size was read.
+     */
+    static void requireEnd(ReadableByteChannel source, ByteBuffer scratch, long size) throws IOException {
+        scratch.clear().limit(1);
+        int read;
+        do {
+            read = source.read(scratch);
+        } while (read == 0);
+        if (read > 0) {
+            throw new IllegalArgumentException("Chunk body is longer than " + size + " bytes");
+        }
+    }
+}
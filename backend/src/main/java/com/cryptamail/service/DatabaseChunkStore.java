@@ -0,0 +1,78 @@
+package com.cryptamail.service;
+
+import com.cryptamail.model.AttachmentChunk;
+import com.cryptamail.repository.AttachmentChunkRepository;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Keeps chunk bytes in attachment_chunks.encrypted_data, next to the metadata.
+ * The data goes away with the row. Chunks built from metadata alone have their
+ * data loaded on first use.
+ */
+@Component
+public class DatabaseChunkStore implements ChunkStore {
+
+    public static final String NAME = "database";
+
+    private final AttachmentChunkRepository chunkRepository;
+
+    public DatabaseChunkStore(AttachmentChunkRepository chunkRepository) {
+        this.chunkRepository = chunkRepository;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void write(AttachmentChunk chunk, ReadableByteChannel source, long size) throws IOException {
+        // The blob column needs the whole chunk in memory; size is capped by the caller
+        byte[] bytes = new byte[Math.toIntExact(size)];
+        ChunkStore.fill(source, ByteBuffer.wrap(bytes), size);
+        ChunkStore.requireEnd(source, ByteBuffer.allocate(1), size);
+        chunk.setEncryptedData(bytes);
+        chunk.setLocation(null);
+    }
+
+    @Override
+    public byte[] read(AttachmentChunk chunk) {
+        return data(chunk);
+    }
+
+    @Override
+    public long length(AttachmentChunk chunk) {
+        return data(chunk).length;
+    }
+
+    @Override
+    public void transferTo(AttachmentChunk chunk, long position, long count, WritableByteChannel target)
+            throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(data(chunk), Math.toIntExact(position), Math.toIntExact(count));
+        while (data.hasRemaining()) {
+            target.write(data);
+        }
+    }
+
+    @Override
+    public void discard(AttachmentChunk chunk) {
+        // Data of an unsaved chunk lives only on the entity
+    }
+
+    @Override
+    public void deleteAll(Long attachmentId) {
+        // Deleting the chunk rows deletes the data
+    }
+
+    private byte[] data(AttachmentChunk chunk) {
+        if (chunk.getEncryptedData() == null && chunk.getId() != null) {
+            chunk.setEncryptedData(chunkRepository.findDataById(chunk.getId()));
+        }
+        return chunk.getEncryptedData();
+    }
+}
@@ -0,0 +1,287 @@
+package com.cryptamail.service;
+
+import com.cryptamail.dto.DeliveryStatusResponse;
+import com.cryptamail.dto.SendEmailRequest;
+import com.cryptamail.model.Delivery;
+import com.cryptamail.model.DeliveryStatus;
+import com.cryptamail.model.EmailMessage;
+import com.cryptamail.repository.DeliveryRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous send pipeline behind POST /api/emails/send/async.
+ *
+ * A request is journaled as a PENDING delivery_queue row and its id offered to a
+ * bounded in-process queue; when the queue is full the caller gets 503. Worker
+ * threads drain up to batch-size ids at a time and deliver them in one transaction
+ * (group commit). If that transaction fails, the batch is retried one delivery per
+ * transaction so a single bad request only fails itself; send quota taken by the
+ * rolled-back batch is refunded, so the retry is not counted twice. PENDING rows
+ * left over from a crash are replayed on startup.
+ *
+ * Replay can queue an id that a worker (here, or on another instance) is already
+ * delivering, so a worker claims each journal row under a row lock and skips it
+ * unless it is still PENDING; the claim, the send and the settle commit together.
+ *
+ * A batch spans many senders and recipients, so it locks all their mailbox counter
+ * rows in ascending user id order before delivering anything; two workers (or a
+ * worker and a synchronous send) then never wait on each other's rows in a cycle.
+ */
+@Service
+public class DeliveryQueueService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeliveryQueueService.class);
+
+    private final DeliveryRepository deliveryRepository;
+    private final EmailService emailService;
+    private final MailboxCounterService counterService;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate tx;
+    private final BlockingQueue<String> queue;
+    private final int capacity;
+    private final int workers;
+    private final int batchSize;
+    private final List<Thread> threads = new ArrayList<>();
+    // Rows created after this are queued by enqueue itself and are not replayed
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile boolean running;
+
+    public DeliveryQueueService(
+            DeliveryRepository deliveryRepository,
+            EmailService emailService,
+            MailboxCounterService counterService,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager,
+            @Value("${mailbox.delivery.queue-capacity:10000}") int capacity,
+            @Value("${mailbox.delivery.workers:2}") int workers,
+            @Value("${mailbox.delivery.batch-size:50}") int batchSize
+    ) {
+        this.deliveryRepository = deliveryRepository;
+        this.emailService = emailService;
+        this.counterService = counterService;
+        this.objectMapper = objectMapper;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.workers = workers;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Journal a send and queue it for delivery.
+     *
+     * @throws ResponseStatusException 503 when the queue is full
+     */
+    public Delivery enqueue(SendEmailRequest req, String senderUsername) {
+        if (queue.remainingCapacity() == 0) {
+            throw queueFull();
+        }
+
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(req);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid email payload");
+        }
+
+        // Committed before the id is queued, so a worker always finds the row
+        Delivery delivery = deliveryRepository.save(new Delivery(UUID.randomUUID().toString(), senderUsername, payload));
+        if (!queue.offer(delivery.getId())) {
+            deliveryRepository.delete(delivery);
+            throw queueFull();
+        }
+        return delivery;
+    }
+
+    /**
+     * @return the delivery, or 404 if it does not exist or belongs to someone else
+     */
+    public DeliveryStatusResponse getStatus(String deliveryId, String username) {
+        return deliveryRepository.findById(deliveryId)
+                .filter(d -> d.getSenderUsername().equals(username))
+                .map(DeliveryStatusResponse::new)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Delivery not found"));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queueDepth", queue.size());
+        stats.put("capacity", capacity);
+        stats.put("workers", workers);
+        stats.put("batchSize", batchSize);
+        stats.put("delivered", delivered.get());
+        stats.put("failed", failed.get());
+        return stats;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(this::drain, "delivery-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            threads.add(worker);
+        }
+
+        // Blocks on a full queue, so it gets its own thread instead of holding up startup
+        Thread replay = new Thread(this::replayPending, "delivery-replay");
+        replay.setDaemon(true);
+        replay.start();
+        threads.add(replay);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        threads.forEach(Thread::interrupt);
+    }
+
+    // Settled journal rows are only kept for status lookups
+    @Scheduled(cron = "0 45 * * * ?")
+    public void purgeSettled() {
+        int deleted = deliveryRepository.deleteSettledBefore(LocalDateTime.now().minusDays(1));
+        if (deleted > 0) {
+            logger.info("Purged {} settled deliveries", deleted);
+        }
+    }
+
+    private void replayPending() {
+        List<String> pending = deliveryRepository.findIdsByStatusCreatedBefore(DeliveryStatus.PENDING, startedAt);
+        if (pending.isEmpty()) return;
+
+        logger.info("Replaying {} pending deliveries from the journal", pending.size());
+        try {
+            for (String id : pending) {
+                queue.put(id);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        List<String> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                String first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                deliver(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // Rows stay PENDING and are replayed on the next start
+                logger.error("Delivery batch failed: {}", e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void deliver(List<String> ids) {
+        try {
+            Integer sent = tx.execute(status -> deliverAll(ids));
+            delivered.addAndGet(sent);
+        } catch (RuntimeException batchFailure) {
+            if (ids.size() == 1) {
+                markFailed(ids.get(0), batchFailure);
+                return;
+            }
+            for (String id : ids) {
+                try {
+                    Integer sent = tx.execute(status -> deliverAll(List.of(id)));
+                    delivered.addAndGet(sent);
+                } catch (RuntimeException e) {
+                    markFailed(id, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Claim and send the given deliveries in the caller's transaction. Journal rows are
+     * locked first (in id order), then every participant's counter row in ascending
+     * user id order, so batch and single retries take locks in the same order.
+     *
+     * @return how many were delivered; rows no longer PENDING are skipped
+     */
+    private int deliverAll(List<String> ids) {
+        List<Delivery> claimed = new ArrayList<>();
+        for (String id : new TreeSet<>(ids)) {
+            deliveryRepository.findForUpdate(id)
+                    .filter(d -> d.getStatus() == DeliveryStatus.PENDING)
+                    .ifPresent(claimed::add);
+        }
+
+        Set<Long> userIds = new HashSet<>();
+        for (Delivery delivery : claimed) {
+            userIds.addAll(emailService.participants(payload(delivery), delivery.getSenderUsername()));
+        }
+        counterService.lockInOrder(userIds);
+
+        for (Delivery delivery : claimed) {
+            EmailMessage saved = emailService.sendEmail(payload(delivery), delivery.getSenderUsername());
+            delivery.settle(DeliveryStatus.DELIVERED, saved.getId(), null);
+        }
+        return claimed.size();
+    }
+
+    private SendEmailRequest payload(Delivery delivery) {
+        try {
+            return objectMapper.readValue(delivery.getPayload(), SendEmailRequest.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unreadable journal payload for delivery " + delivery.getId());
+        }
+    }
+
+    private void markFailed(String id, RuntimeException cause) {
+        failed.incrementAndGet();
+        String reason = cause instanceof ResponseStatusException rse ? rse.getReason() : cause.getMessage();
+        String error = reason == null ? cause.getClass().getSimpleName()
+                : reason.substring(0, Math.min(reason.length(), 512));
+        try {
+            tx.executeWithoutResult(status -> deliveryRepository.findForUpdate(id)
+                    .filter(d -> d.getStatus() == DeliveryStatus.PENDING)
+                    .ifPresent(d -> d.settle(DeliveryStatus.FAILED, null, error)));
+        } catch (RuntimeException e) {
+            logger.error("Could not record failure of delivery {}: {}", id, e.getMessage());
+        }
+    }
+
+    private ResponseStatusException queueFull() {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                "Delivery queue is full, please retry later");
+    }
+}
@@ -1,52 +1,221 @@
 package com.cryptamail.service;
 
+import com.cryptamail.dto.BatchSendEmailRequest;
+import com.cryptamail.dto.DraftRequest;
+import com.cryptamail.dto.DraftResponse;
 import com.cryptamail.dto.EmailDto;
+import com.cryptamail.dto.EmailHeader;
+import com.cryptamail.dto.MailboxChangeEntry;
+import com.cryptamail.dto.MailboxChangesResponse;
+import com.cryptamail.dto.MailboxCountsResponse;
+import com.cryptamail.dto.MailboxPage;
+import com.cryptamail.dto.NewMailNotice;
 import com.cryptamail.dto.SendEmailRequest;
 import com.cryptamail.model.EmailMessage;
+import com.cryptamail.model.MailboxChange;
+import com.cryptamail.model.MailboxChangeType;
 import com.cryptamail.model.User;
 import com.cryptamail.model.CloudFile;
 import com.cryptamail.model.Attachment;
+import com.cryptamail.model.AttachmentStatus;
 import com.cryptamail.repository.AttachmentRepository;
 import com.cryptamail.repository.EmailRepository;
 import com.cryptamail.repository.UserRepository;
 import com.cryptamail.repository.CloudFileRepository;
+import com.cryptamail.util.MailboxCursor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Service
 public class EmailService {
 
+    /**
+     * Actions accepted by {@link #bulkUpdate(BulkAction, List, String)}.
+     */
+    public enum BulkAction {
+        READ, UNREAD, DELETE, RESTORE, SPAM, NOT_SPAM, PERMANENT;
+
+        public static BulkAction from(String name) {
+            try {
+                return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown bulk action: " + name);
+            }
+        }
+    }
+
     private final EmailRepository emailRepository;
     private final UserRepository userRepository;
     private final AttachmentRepository attachmentRepository;
     private final CloudFileRepository cloudFileRepository;
+    private final UserDirectory userDirectory;
+    private final MailboxCounterService counterService;
+    private final MailboxChangeLog changeLog;
+    private final MailboxStreamService streamService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SenderReputationService reputationService;
+    private final SendRateLimiter rateLimiter;
+
+    private static final Set<AttachmentStatus> SENDABLE = EnumSet.of(AttachmentStatus.COMPLETED);
+    // A draft may be saved while its attachments are still uploading
+    private static final Set<AttachmentStatus> DRAFTABLE =
+            EnumSet.of(AttachmentStatus.INIT, AttachmentStatus.UPLOADING, AttachmentStatus.COMPLETED);
+
+    @Value("${mailbox.send.max-recipients:100}")
+    private int maxRecipients;
 
     public EmailService(
             EmailRepository emailRepository,
             UserRepository userRepository,
             AttachmentRepository attachmentRepository,
-            CloudFileRepository cloudFileRepository
+            CloudFileRepository cloudFileRepository,
+            UserDirectory userDirectory,
+            MailboxCounterService counterService,
+            MailboxChangeLog changeLog,
+            MailboxStreamService streamService,
+            ApplicationEventPublisher eventPublisher,
+            SenderReputationService reputationService,
+            SendRateLimiter rateLimiter
     ) {
         this.emailRepository = emailRepository;
         this.userRepository = userRepository;
         this.attachmentRepository = attachmentRepository;
         this.cloudFileRepository = cloudFileRepository;
+        this.userDirectory = userDirectory;
+        this.counterService = counterService;
+        this.changeLog = changeLog;
+        this.streamService = streamService;
+        this.eventPublisher = eventPublisher;
+        this.reputationService = reputationService;
+        this.rateLimiter = rateLimiter;
     }
 
     @Transactional
     public EmailMessage sendEmail(SendEmailRequest req, String senderUsername) {
+        Long senderId = userDirectory.idOf(senderUsername);
+        String to = parseRecipient(req.getToUsername());
+        Long recipientId = userDirectory.idOf(to);
+        // Ids come from the directory cache, so an over-quota sender is turned away before any database work
+        boolean withinQuota = rateLimiter.acquire(senderId, recipientId);
+
+        EmailMessage saved = emailRepository.save(address(new EmailMessage(), req, senderId, recipientId, withinQuota));
+        delivered(saved, senderUsername, to);
+        return saved;
+    }
+
+    /**
+     * Send one message to several recipients. Recipients are resolved with one query,
+     * the shared ciphertext is referenced by every row and the rows are inserted as a
+     * JDBC batch; spam rules still run per recipient.
+     */
+    @Transactional
+    public List<EmailMessage> sendToMany(BatchSendEmailRequest req, String senderUsername) {
         User sender = userRepository.findByUsername(senderUsername).orElseThrow();
-        
-        // Extract username from email or username
-        String toUsername = req.getToUsername().trim();
+
+        Map<String, String> keyByUsername = new LinkedHashMap<>();
+        for (BatchSendEmailRequest.Recipient r : req.getRecipients()) {
+            String to = parseRecipient(r.getToUsername());
+            if (keyByUsername.putIfAbsent(to, r.getEncryptedSymmetricKey()) != null) {
+                throw new IllegalArgumentException("Duplicate recipient: " + to);
+            }
+        }
+        if (keyByUsername.size() > maxRecipients) {
+            throw new IllegalArgumentException("Too many recipients (max " + maxRecipients + ")");
+        }
+
+        Map<String, Long> recipientIds = new HashMap<>();
+        for (UserRepository.UsernameView view : userRepository.findIdsByUsernameIn(keyByUsername.keySet())) {
+            recipientIds.put(view.getUsername(), view.getId());
+        }
+        List<String> unknown = keyByUsername.keySet().stream()
+                .filter(username -> !recipientIds.containsKey(username))
+                .collect(Collectors.toList());
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("Unknown recipients: " + String.join(", ", unknown));
+        }
+        // All recipients' quota up front: an over-quota batch fails before the attachment
+        // loads and gives back what it took for the others
+        Map<Long, Boolean> withinQuota = rateLimiter.acquireAll(sender.getId(), recipientIds.values());
+
+        List<Attachment> attachments = loadAttachments(req.getAttachmentIds(), sender.getId(), SENDABLE);
+        List<CloudFile> cloudFiles = loadCloudFiles(req.getCloudFileIds(), sender.getId());
+        boolean hasAttachments = !attachments.isEmpty() || !cloudFiles.isEmpty();
+        LocalDateTime now = LocalDateTime.now();
+
+        List<EmailMessage> emails = new ArrayList<>(keyByUsername.size());
+        for (Map.Entry<String, String> entry : keyByUsername.entrySet()) {
+            Long recipientId = recipientIds.get(entry.getKey());
+
+            EmailMessage email = new EmailMessage();
+            email.setSenderId(sender.getId());
+            email.setRecipientId(recipientId);
+            email.setIsDraft(false);
+            email.setEncryptedSubject(req.getEncryptedSubject());
+            email.setSubjectIv(req.getSubjectIv());
+            email.setEncryptedBody(req.getEncryptedBody());
+            email.setBodyIv(req.getBodyIv());
+            email.setEncryptedSymmetricKey(entry.getValue());
+            email.setSenderEncryptedSymmetricKey(req.getSenderEncryptedSymmetricKey());
+            email.setAttachments(new ArrayList<>(attachments));
+            email.setCloudFiles(new ArrayList<>(cloudFiles));
+
+            if (isSpam(sender.getId(), recipientId, hasAttachments, now, withinQuota.get(recipientId))) {
+                email.setIsSpam(true);
+                email.setSpamMarkedAt(now);
+            }
+            emails.add(email);
+        }
+
+        List<EmailMessage> saved = emailRepository.saveAll(emails);
+        Map<Long, String> usernameById = new HashMap<>();
+        recipientIds.forEach((username, id) -> usernameById.put(id, username));
+        for (EmailMessage email : saved) {
+            delivered(email, sender.getUsername(), usernameById.get(email.getRecipientId()));
+        }
+        return saved;
+    }
+
+    /**
+     * Sender and recipient ids of a send request, or an empty list if either is
+     * unknown (sendEmail rejects such a request anyway).
+     */
+    public List<Long> participants(SendEmailRequest req, String senderUsername) {
+        try {
+            return List.of(userDirectory.idOf(senderUsername), userDirectory.idOf(parseRecipient(req.getToUsername())));
+        } catch (RuntimeException e) {
+            return List.of();
+        }
+    }
+
+    /**
+     * Accepts "bob" or "bob@smail.in" and returns the lower-cased username.
+     */
+    private String parseRecipient(String toUsername) {
+        toUsername = toUsername.trim();
         if (toUsername.isEmpty()) {
             throw new IllegalArgumentException("Invalid recipient email format");
         }
-        
+
         // Handle both full email and username formats
         String to;
         if (toUsername.contains("@")) {
@@ -62,228 +231,355 @@ public class EmailService {
         if (to.length() > 50) {
             throw new IllegalArgumentException("Recipient username too long");
         }
-        
-        User recipient = userRepository.findByUsername(to).orElseThrow();
+        return to;
+    }
+
+    /**
+     * Rule-based spam detection for one sender -> recipient delivery.
+     *
+     * @param withinQuota result of {@link SendRateLimiter#acquire}, taken by the caller before its database work
+     */
+    private boolean isSpam(Long senderId, Long recipientId, boolean hasAttachments, LocalDateTime now,
+                           boolean withinQuota) {
+        SenderReputationService.Reputation reputation = reputationService.recordSend(senderId, recipientId, now);
+
+        // Rule 1: First-time sender
+        boolean isFirstTimeSender = reputation.firstContact();
+
+        // Rule 2: Attachments from unknown sender
+        boolean unknownWithAttachments = hasAttachments && isFirstTimeSender;
+
+        // Rule 3: Rate-limit violations (5+ emails to the same recipient in the last hour, or over quota)
+        boolean rateLimited = reputation.recentSends() >= 5 || !withinQuota;
+
+        return isFirstTimeSender || unknownWithAttachments || rateLimited;
+    }
 
-        EmailMessage email = new EmailMessage();
-        email.setSenderId(sender.getId());
-        email.setRecipientId(recipient.getId());
+    /**
+     * @param statuses upload states acceptable to the caller; a sent message needs COMPLETED
+     * @throws IllegalArgumentException if any id is not a live attachment of the sender in one of statuses
+     */
+    private List<Attachment> loadAttachments(List<Long> attachmentIds, Long senderId,
+                                             Collection<AttachmentStatus> statuses) {
+        if (attachmentIds == null || attachmentIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Set<Long> ids = new HashSet<>(attachmentIds);
+        // Linked as loaded: attachments carry their own wrapped keys, so nothing on them changes
+        List<Attachment> attachments = attachmentRepository.findLinkable(ids, senderId, statuses);
+        if (attachments.size() != ids.size()) {
+            throw new IllegalArgumentException("Attachments must be your own uploads, complete and not deleted");
+        }
+        return attachments;
+    }
+
+    /**
+     * @throws SecurityException if any id is not a live, unexpired cloud file of the sender
+     */
+    private List<CloudFile> loadCloudFiles(List<Long> cloudFileIds, Long senderId) {
+        if (cloudFileIds == null || cloudFileIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Set<Long> ids = new HashSet<>(cloudFileIds);
+        List<CloudFile> cloudFiles = cloudFileRepository.findLinkable(ids, senderId, LocalDateTime.now());
+        if (cloudFiles.size() != ids.size()) {
+            throw new SecurityException("Unauthorized: You can only attach your own, unexpired cloud files");
+        }
+        return cloudFiles;
+    }
+
+    /**
+     * Fill in everything a delivered message carries and apply the spam rules.
+     */
+    private EmailMessage address(EmailMessage email, SendEmailRequest req, Long senderId, Long recipientId,
+                                 boolean withinQuota) {
+        List<Attachment> attachments = loadAttachments(req.getAttachmentIds(), senderId, SENDABLE);
+        List<CloudFile> cloudFiles = loadCloudFiles(req.getCloudFileIds(), senderId);
+        LocalDateTime now = LocalDateTime.now();
+
+        email.setSenderId(senderId);
+        email.setRecipientId(recipientId);
         email.setIsDraft(false);
+        email.setTimestamp(now);
         email.setEncryptedSubject(req.getEncryptedSubject());
         email.setSubjectIv(req.getSubjectIv());
         email.setEncryptedBody(req.getEncryptedBody());
         email.setBodyIv(req.getBodyIv());
         email.setEncryptedSymmetricKey(req.getEncryptedSymmetricKey());
         email.setSenderEncryptedSymmetricKey(req.getSenderEncryptedSymmetricKey());
+        email.setAttachments(attachments);
+        email.setCloudFiles(cloudFiles);
 
-        // Apply rule-based spam detection
-        boolean isSpam = false;
-        LocalDateTime now = LocalDateTime.now();
-        
-        // Rule 1: First-time sender
-        List<EmailMessage> previousEmails = emailRepository.findAllBySenderIdOrRecipientId(sender.getId(), recipient.getId());
-        boolean isFirstTimeSender = previousEmails.stream()
-            .noneMatch(e -> e.getSenderId().equals(sender.getId()) && e.getRecipientId().equals(recipient.getId()));
-        
-        if (isFirstTimeSender) {
-            isSpam = true;
-        }
-        
-        // Rule 2: Attachments from unknown sender
-        if ((req.getAttachmentIds() != null && !req.getAttachmentIds().isEmpty()) ||
-            (req.getCloudFileIds() != null && !req.getCloudFileIds().isEmpty())) {
-            if (isFirstTimeSender) {
-                isSpam = true;
-            }
-        }
-        
-        // Rule 3: Rate-limit violations (simplified - check for multiple emails to same recipient in last hour)
-        List<EmailMessage> recentEmails = emailRepository.findAllBySenderIdOrRecipientId(sender.getId(), recipient.getId()).stream()
-            .filter(e -> e.getTimestamp().isAfter(now.minusHours(1)))
-            .collect(Collectors.toList());
-        
-        if (recentEmails.size() >= 5) {
-            isSpam = true;
-        }
-        
-        // Set spam status
-        if (isSpam) {
+        if (isSpam(senderId, recipientId, !attachments.isEmpty() || !cloudFiles.isEmpty(), now, withinQuota)) {
             email.setIsSpam(true);
             email.setSpamMarkedAt(now);
         }
+        return email;
+    }
 
-        if (req.getAttachmentIds() != null && !req.getAttachmentIds().isEmpty()) {
-            List<Attachment> attachments = attachmentRepository.findAllById(req.getAttachmentIds());
-
-            // Attachments already have their own keys set during upload init
-            // No need to overwrite them with email keys
+    private void applyDraft(EmailMessage draft, DraftRequest req, Long senderId) {
+        draft.setTimestamp(LocalDateTime.now());
+        draft.setEncryptedSubject(req.getEncryptedSubject());
+        draft.setSubjectIv(req.getSubjectIv());
+        draft.setEncryptedBody(req.getEncryptedBody());
+        draft.setBodyIv(req.getBodyIv());
+        draft.setSenderEncryptedSymmetricKey(req.getSenderEncryptedSymmetricKey());
+        // The recipient column is NOT NULL; while the draft is self-addressed the sender's copy is the right one
+        draft.setEncryptedSymmetricKey(req.getSenderEncryptedSymmetricKey());
+        draft.setAttachments(loadAttachments(req.getAttachmentIds(), senderId, DRAFTABLE));
+        draft.setCloudFiles(loadCloudFiles(req.getCloudFileIds(), senderId));
+    }
 
-            attachmentRepository.saveAll(attachments);
-            email.setAttachments(attachments);
+    /**
+     * @param expectedVersion checked when not null
+     */
+    private EmailMessage lockDraft(Long id, Long senderId, Long expectedVersion) {
+        EmailMessage draft = emailRepository.findDraftForUpdate(id, senderId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Draft not found"));
+        if (expectedVersion != null && draft.getDraftVersion() != expectedVersion) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Draft was saved elsewhere (current version " + draft.getDraftVersion() + ")");
         }
+        return draft;
+    }
 
-        if (req.getCloudFileIds() != null && !req.getCloudFileIds().isEmpty()) {
-            List<CloudFile> cloudFiles = cloudFileRepository.findAllById(req.getCloudFileIds());
-            
-            // Verify user owns all cloud files
-            for (CloudFile cloudFile : cloudFiles) {
-                if (!cloudFile.getUploaderId().equals(sender.getId())) {
-                    throw new SecurityException("Unauthorized: You can only attach your own cloud files");
-                }
-                if (cloudFile.isExpired()) {
-                    throw new SecurityException("Cloud file has expired: " + cloudFile.getOriginalFilename());
-                }
-            }
-            
-            email.setCloudFiles(cloudFiles);
+    /**
+     * Bookkeeping for a newly stored message: counters, change log and the push to open streams.
+     */
+    private void delivered(EmailMessage saved, String senderUsername, String recipientUsername) {
+        counterService.apply(null, saved);
+        changeLog.recordForParticipants(saved, MailboxChangeType.UPSERT);
+
+        // Pushed to open streams after commit; skipped entirely when the recipient is offline
+        if (streamService.isConnected(saved.getRecipientId())) {
+            eventPublisher.publishEvent(new MailboxStreamService.NewMail(
+                    saved.getRecipientId(), newMailNotice(saved, senderUsername, recipientUsername)));
         }
-        
-        return emailRepository.save(email);
     }
 
+    /**
+     * Create a draft. Later autosaves go to {@link #updateDraft} and rewrite the same row.
+     */
     @Transactional
-    public EmailMessage saveDraft(SendEmailRequest req, String username) {
-        User sender = userRepository.findByUsername(username).orElseThrow();
+    public DraftResponse saveDraft(DraftRequest req, String username) {
+        Long senderId = userDirectory.idOf(username);
         EmailMessage draft = new EmailMessage();
-        draft.setSenderId(sender.getId());
-        draft.setRecipientId(sender.getId());
+        draft.setSenderId(senderId);
+        // Addressed to its author until sent
+        draft.setRecipientId(senderId);
         draft.setIsDraft(true);
-        draft.setEncryptedSubject(req.getEncryptedSubject());
-        draft.setSubjectIv(req.getSubjectIv());
-        draft.setEncryptedBody(req.getEncryptedBody());
-        draft.setBodyIv(req.getBodyIv());
-        draft.setSenderEncryptedSymmetricKey(req.getSenderEncryptedSymmetricKey());
+        applyDraft(draft, req, senderId);
 
-        if (req.getAttachmentIds() != null) {
-            List<Attachment> attachments = attachmentRepository.findAllById(req.getAttachmentIds());
-
-            // Attachments already have their own keys set during upload init
-            // No need to overwrite them with email keys
+        EmailMessage saved = emailRepository.save(draft);
+        changeLog.record(senderId, saved.getId(), MailboxChangeType.UPSERT);
+        return new DraftResponse(saved.getId(), saved.getDraftVersion());
+    }
 
-            attachmentRepository.saveAll(attachments);
-            draft.setAttachments(attachments);
+    /**
+     * Overwrite a draft in place.
+     *
+     * @throws ResponseStatusException 409 if the draft was saved since req.version
+     */
+    @Transactional
+    public DraftResponse updateDraft(Long id, DraftRequest req, String username) {
+        if (req.getVersion() == null) {
+            throw new IllegalArgumentException("Draft version is required");
         }
+        Long senderId = userDirectory.idOf(username);
+        EmailMessage draft = lockDraft(id, senderId, req.getVersion());
+        applyDraft(draft, req, senderId);
+        draft.setDraftVersion(draft.getDraftVersion() + 1);
 
-        if (req.getCloudFileIds() != null) {
-            List<CloudFile> cloudFiles = cloudFileRepository.findAllById(req.getCloudFileIds());
-            
-            // Verify user owns all cloud files
-            for (CloudFile cloudFile : cloudFiles) {
-                if (!cloudFile.getUploaderId().equals(sender.getId())) {
-                    throw new SecurityException("Unauthorized: You can only attach your own cloud files");
-                }
-                if (cloudFile.isExpired()) {
-                    throw new SecurityException("Cloud file has expired: " + cloudFile.getOriginalFilename());
-                }
-            }
-            
-            draft.setCloudFiles(cloudFiles);
-        }
-        
-        return emailRepository.save(draft);
+        changeLog.record(senderId, id, MailboxChangeType.UPSERT);
+        return new DraftResponse(id, draft.getDraftVersion());
+    }
+
+    /**
+     * Send a draft by turning its row into the sent message, with the final content
+     * in req. Runs the same recipient, attachment and spam checks as {@link #sendEmail}.
+     *
+     * @param version if given, the draft must still be at this version
+     */
+    @Transactional
+    public EmailMessage sendDraft(Long id, Long version, SendEmailRequest req, String senderUsername) {
+        Long senderId = userDirectory.idOf(senderUsername);
+        String to = parseRecipient(req.getToUsername());
+        Long recipientId = userDirectory.idOf(to);
+        boolean withinQuota = rateLimiter.acquire(senderId, recipientId);
+        EmailMessage draft = lockDraft(id, senderId, version);
+
+        EmailMessage sent = address(draft, req, senderId, recipientId, withinQuota);
+        // A draft contributes to no counter, so this is the same bookkeeping as a new message
+        delivered(sent, senderUsername, to);
+        return sent;
+    }
+
+    /**
+     * Discard a draft. It is gone for good; the row is removed by the compactor.
+     */
+    @Transactional
+    public void discardDraft(Long id, String username) {
+        Long senderId = userDirectory.idOf(username);
+        EmailMessage draft = lockDraft(id, senderId, null);
+        draft.setDeletedBySender(true);
+        draft.setPermanentlyDeletedBySender(true);
+        changeLog.record(senderId, id, MailboxChangeType.REMOVE);
     }
 
 @Transactional
-    public List<EmailDto> getInbox(String username) {
+    public MailboxPage getInbox(String username, String cursor, Integer limit) {
         User u = userRepository.findByUsername(username).orElseThrow();
-        return emailRepository.findInbox(u.getId())
-                .stream().map(e -> {
-                    EmailDto dto = new EmailDto(e);
-                    // Set actual usernames instead of IDs
-                    User sender = userRepository.findById(e.getSenderId()).orElse(null);
-                    User recipient = userRepository.findById(e.getRecipientId()).orElse(null);
-                    dto.setFromUsername(sender != null ? sender.getUsername() : "unknown");
-                    dto.setToUsername(recipient != null ? recipient.getUsername() : "unknown");
-                    
-                    // Set isSender flag - false for inbox (user is always recipient)
-                    dto.setIsSender(false);
-                    
-                    // Handle attachments within transaction
-                    if (e.getAttachments() != null) {
-                        dto.setAttachmentIds(e.getAttachments().stream()
-                                .map(Attachment::getId)
-                                .collect(Collectors.toList()));
-                    }
-                    
-                    return dto;
-                }).collect(Collectors.toList());
+        MailboxCursor after = MailboxCursor.decode(cursor);
+        int pageSize = MailboxCursor.normalizeLimit(limit);
+        List<EmailHeader> rows = emailRepository.findInboxPage(
+                u.getId(), after.getTimestamp(), after.getId(), PageRequest.of(0, pageSize + 1));
+        return toPage(rows, pageSize, e -> false);
     }
 
 @Transactional
-    public List<EmailDto> getSent(String username) {
+    public MailboxPage getSent(String username, String cursor, Integer limit) {
         User u = userRepository.findByUsername(username).orElseThrow();
-        return emailRepository.findSent(u.getId())
-                .stream().map(e -> {
-                    EmailDto dto = new EmailDto(e);
-                    // Set actual usernames instead of IDs
-                    User sender = userRepository.findById(e.getSenderId()).orElse(null);
-                    User recipient = userRepository.findById(e.getRecipientId()).orElse(null);
-                    dto.setFromUsername(sender != null ? sender.getUsername() : "unknown");
-                    dto.setToUsername(recipient != null ? recipient.getUsername() : "unknown");
-                    
-                    // Set isSender flag - true for sent (user is always sender)
-                    dto.setIsSender(true);
-                    
-                    // Handle attachments within transaction
-                    if (e.getAttachments() != null) {
-                        dto.setAttachmentIds(e.getAttachments().stream()
-                                .map(Attachment::getId)
-                                .collect(Collectors.toList()));
-                    }
-                    
-                    return dto;
-                }).collect(Collectors.toList());
-    }
-
-public List<EmailDto> getDrafts(String username) {
+        MailboxCursor after = MailboxCursor.decode(cursor);
+        int pageSize = MailboxCursor.normalizeLimit(limit);
+        List<EmailHeader> rows = emailRepository.findSentPage(
+                u.getId(), after.getTimestamp(), after.getId(), PageRequest.of(0, pageSize + 1));
+        return toPage(rows, pageSize, e -> true);
+    }
+
+@Transactional
+    public MailboxPage getDrafts(String username, String cursor, Integer limit) {
         User u = userRepository.findByUsername(username).orElseThrow();
-        return emailRepository.findDrafts(u.getId())
-                .stream().map(e -> {
-                    EmailDto dto = new EmailDto(e);
-                    // Set actual usernames instead of IDs
-                    User sender = userRepository.findById(e.getSenderId()).orElse(null);
-                    User recipient = userRepository.findById(e.getRecipientId()).orElse(null);
-                    dto.setFromUsername(sender != null ? sender.getUsername() : "unknown");
-                    dto.setToUsername(recipient != null ? recipient.getUsername() : "unknown");
-                    
-                    // Set isSender flag - true for drafts (user is sender)
-                    dto.setIsSender(true);
-                    
-                    // Handle attachments within transaction
-                    if (e.getAttachments() != null) {
-                        dto.setAttachmentIds(e.getAttachments().stream()
-                                .map(Attachment::getId)
-                                .collect(Collectors.toList()));
-                    }
-                    
-                    return dto;
-                }).collect(Collectors.toList());
+        MailboxCursor after = MailboxCursor.decode(cursor);
+        int pageSize = MailboxCursor.normalizeLimit(limit);
+        List<EmailHeader> rows = emailRepository.findDraftsPage(
+                u.getId(), after.getTimestamp(), after.getId(), PageRequest.of(0, pageSize + 1));
+        return toPage(rows, pageSize, e -> true);
     }
 
 @Transactional
-    public List<EmailDto> getTrash(String username) {
+    public MailboxPage getTrash(String username, String cursor, Integer limit) {
         User u = userRepository.findByUsername(username).orElseThrow();
-        return emailRepository.findTrash(u.getId())
-                .stream().map(e -> {
-                    EmailDto dto = new EmailDto(e);
-                    // Set actual usernames instead of IDs
-                    User sender = userRepository.findById(e.getSenderId()).orElse(null);
-                    User recipient = userRepository.findById(e.getRecipientId()).orElse(null);
-                    dto.setFromUsername(sender != null ? sender.getUsername() : "unknown");
-                    dto.setToUsername(recipient != null ? recipient.getUsername() : "unknown");
-                    
-                    // Set isSender flag - true if user is the sender
-                    dto.setIsSender(e.getSenderId().equals(u.getId()));
-                    
-                    // Handle attachments within transaction
-                    if (e.getAttachments() != null) {
-                        dto.setAttachmentIds(e.getAttachments().stream()
-                                .map(Attachment::getId)
-                                .collect(Collectors.toList()));
-                    }
-                    
-                    return dto;
-                }).collect(Collectors.toList());
+        MailboxCursor after = MailboxCursor.decode(cursor);
+        int pageSize = MailboxCursor.normalizeLimit(limit);
+        PageRequest page = PageRequest.of(0, pageSize + 1);
+        List<EmailHeader> rows = newestFirst(pageSize + 1,
+                emailRepository.findTrashPageAsSender(u.getId(), after.getTimestamp(), after.getId(), page),
+                emailRepository.findTrashPageAsRecipient(u.getId(), after.getTimestamp(), after.getId(), page));
+        return toPage(rows, pageSize, e -> e.getSenderId().equals(u.getId()));
+    }
+
+    /**
+     * Merge keyset pages of the same folder into one, in (timestamp, id) descending order.
+     * A message to oneself can be on both sides and is kept once.
+     */
+    private static List<EmailHeader> newestFirst(int limit, List<EmailHeader> a, List<EmailHeader> b) {
+        Map<Long, EmailHeader> byId = new LinkedHashMap<>();
+        a.forEach(h -> byId.put(h.getId(), h));
+        b.forEach(h -> byId.putIfAbsent(h.getId(), h));
+        return byId.values().stream()
+                .sorted(Comparator.comparing(EmailHeader::getTimestamp).thenComparing(EmailHeader::getId).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Weak ETag for the caller's folder listings. A conditional request that matches
+     * costs the cached id lookup and one primary-key read of the change sequence.
+     */
+    public String mailboxETag(String username) {
+        Long userId = userDirectory.idOf(username);
+        return "W/\"" + userId + "-" + changeLog.version(userId) + "\"";
+    }
+
+    @Transactional
+    public MailboxCountsResponse getCounts(String username) {
+        User user = userRepository.findByUsername(username).orElseThrow();
+        return counterService.getCounts(user.getId());
+    }
+
+    /**
+     * Messages that changed after the client's sequence number, collapsed to the
+     * latest state per message. Headers only, like the folder listings.
+     */
+    @Transactional(readOnly = true)
+    public MailboxChangesResponse getChanges(String username, long since) {
+        User user = userRepository.findByUsername(username).orElseThrow();
+        long latest = changeLog.latestSeq(user.getId());
+        if (since == latest) {
+            return new MailboxChangesResponse(latest, false, new ArrayList<>());
+        }
+
+        List<MailboxChange> log = changeLog.changesBetween(user.getId(), since, latest);
+        if (log == null) {
+            return MailboxChangesResponse.resync(latest);
+        }
+
+        // Keep the last record per message, ordered by that record's seq
+        Map<Long, MailboxChange> lastChange = new LinkedHashMap<>();
+        for (MailboxChange change : log) {
+            lastChange.remove(change.getEmailId());
+            lastChange.put(change.getEmailId(), change);
+        }
+
+        List<Long> upsertIds = lastChange.values().stream()
+                .filter(c -> c.getChangeType() == MailboxChangeType.UPSERT)
+                .map(MailboxChange::getEmailId)
+                .collect(Collectors.toList());
+        Map<Long, EmailDto> headers = new HashMap<>();
+        Map<Long, List<String>> folders = new HashMap<>();
+        if (!upsertIds.isEmpty()) {
+            for (EmailRepository.FolderState state : emailRepository.findFolderStates(upsertIds)) {
+                folders.put(state.getId(), MailboxCounterService.Snapshot.of(state).folders(user.getId()));
+            }
+            for (EmailDto dto : toDtos(emailRepository.findHeadersByIdIn(upsertIds),
+                    h -> h.getSenderId().equals(user.getId()))) {
+                headers.put(dto.getId(), dto);
+            }
+        }
+
+        List<MailboxChangeEntry> changes = new ArrayList<>(lastChange.size());
+        for (MailboxChange change : lastChange.values()) {
+            List<String> in = folders.get(change.getEmailId());
+            if (change.getChangeType() == MailboxChangeType.UPSERT && in != null && !in.isEmpty()) {
+                changes.add(new MailboxChangeEntry(change.getSeq(), change.getEmailId(),
+                        MailboxChangeType.UPSERT, in, headers.get(change.getEmailId())));
+            } else {
+                // Removed, or no longer listed anywhere for this user
+                changes.add(new MailboxChangeEntry(change.getSeq(), change.getEmailId(),
+                        MailboxChangeType.REMOVE, new ArrayList<>(), null));
+            }
+        }
+        return new MailboxChangesResponse(latest, false, changes);
+    }
+
+    /**
+     * Full message including the encrypted body, for the message view.
+     * Listings only carry headers.
+     */
+    @Transactional(readOnly = true)
+    public EmailDto getEmail(Long id, String username) {
+        EmailMessage email = emailRepository.findById(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Email not found"));
+        User user = userRepository.findByUsername(username).orElseThrow();
+
+        boolean visibleToSender = email.getSenderId().equals(user.getId())
+                && !email.getPermanentlyDeletedBySender();
+        boolean visibleToRecipient = email.getRecipientId().equals(user.getId())
+                && !email.getIsDraft()
+                && !email.getPermanentlyDeletedByRecipient();
+
+        // Authorization check: only sender or recipient can read the email
+        if (!visibleToSender && !visibleToRecipient) {
+            throw new SecurityException("Unauthorized: You can only read your own emails");
+        }
+
+        EmailDto dto = new EmailDto(email);
+        Map<Long, String> usernames = userDirectory.usernamesFor(List.of(email.getSenderId(), email.getRecipientId()));
+        dto.setFromUsername(usernames.getOrDefault(email.getSenderId(), UserDirectory.UNKNOWN_USERNAME));
+        dto.setToUsername(usernames.getOrDefault(email.getRecipientId(), UserDirectory.UNKNOWN_USERNAME));
+        dto.setIsSender(visibleToSender);
+        hydrateLinks(List.of(dto));
+        return dto;
     }
 
 @Transactional
@@ -296,8 +592,11 @@ public List<EmailDto> getDrafts(String username) {
             throw new SecurityException("Unauthorized: You can only mark your own emails as read");
         }
         
+        MailboxCounterService.Snapshot before = MailboxCounterService.Snapshot.of(email);
         email.setIsRead(true);
         emailRepository.save(email);
+        counterService.apply(before, email);
+        changeLog.record(user.getId(), email.getId(), MailboxChangeType.UPSERT);
     }
 
 @Transactional
@@ -310,6 +609,8 @@ public List<EmailDto> getDrafts(String username) {
             throw new SecurityException("Unauthorized: You can only delete your own emails");
         }
         
+        MailboxCounterService.Snapshot before = MailboxCounterService.Snapshot.of(email);
+
         // Soft delete: mark as deleted by appropriate party
         if (email.getSenderId().equals(user.getId())) {
             email.setDeletedBySender(true);
@@ -319,6 +620,8 @@ public List<EmailDto> getDrafts(String username) {
         }
         
         emailRepository.save(email);
+        counterService.apply(before, email);
+        changeLog.record(user.getId(), email.getId(), MailboxChangeType.UPSERT);
     }
 
     @Transactional
@@ -331,63 +634,51 @@ public List<EmailDto> getDrafts(String username) {
             throw new SecurityException("Unauthorized: You can only permanently delete your own emails");
         }
         
-        // Mark as permanently deleted by appropriate party
+        MailboxCounterService.Snapshot before = MailboxCounterService.Snapshot.of(email);
+
+        // Mark as permanently deleted by appropriate party. Same columns as the bulk
+        // PERMANENT updates; a draft never reached its recipient, so that side is left alone.
         if (email.getSenderId().equals(user.getId())) {
+            email.setDeletedBySender(true);
             email.setPermanentlyDeletedBySender(true);
         }
-        if (email.getRecipientId().equals(user.getId())) {
+        if (email.getRecipientId().equals(user.getId()) && !email.getIsDraft()) {
+            email.setDeletedByRecipient(true);
             email.setPermanentlyDeletedByRecipient(true);
         }
         
         emailRepository.save(email);
+        counterService.apply(before, email);
+        changeLog.record(user.getId(), email.getId(), MailboxChangeType.REMOVE);
     }
 
+    /**
+     * Permanently delete everything in the user's trash with one UPDATE per side.
+     * The rows themselves are removed later by {@link MailboxCompactionService}.
+     */
     @Transactional
     public int emptyTrash(String username) {
-        User user = userRepository.findByUsername(username).orElseThrow();
-        List<EmailMessage> trashEmails = emailRepository.findTrash(user.getId());
-        
-        int deletedCount = 0;
-        for (EmailMessage email : trashEmails) {
-            // Mark as permanently deleted by this user
-            if (email.getSenderId().equals(user.getId())) {
-                email.setPermanentlyDeletedBySender(true);
-            }
-            if (email.getRecipientId().equals(user.getId())) {
-                email.setPermanentlyDeletedByRecipient(true);
-            }
-            
-            emailRepository.save(email);
-            deletedCount++;
-        }
-        
-        return deletedCount;
+        Long userId = userDirectory.idOf(username);
+        List<Long> trashIds = emailRepository.findTrashIds(userId);
+        if (trashIds.isEmpty()) return 0;
+
+        emailRepository.purgeTrashAsSender(userId);
+        emailRepository.purgeTrashAsRecipient(userId);
+
+        // Every trashed row counted once towards this user's trash and nowhere else
+        counterService.adjust(userId, 0, 0, 0, -trashIds.size());
+        changeLog.record(userId, trashIds, MailboxChangeType.REMOVE);
+        return trashIds.size();
     }
 
     @Transactional
-    public List<EmailDto> getSpam(String username) {
+    public MailboxPage getSpam(String username, String cursor, Integer limit) {
         User u = userRepository.findByUsername(username).orElseThrow();
-        return emailRepository.findSpam(u.getId())
-                .stream().map(e -> {
-                    EmailDto dto = new EmailDto(e);
-                    // Set actual usernames instead of IDs
-                    User sender = userRepository.findById(e.getSenderId()).orElse(null);
-                    User recipient = userRepository.findById(e.getRecipientId()).orElse(null);
-                    dto.setFromUsername(sender != null ? sender.getUsername() : "unknown");
-                    dto.setToUsername(recipient != null ? recipient.getUsername() : "unknown");
-                    
-                    // Set isSender flag - false for spam (user is always recipient)
-                    dto.setIsSender(false);
-                    
-                    // Handle attachments within transaction
-                    if (e.getAttachments() != null) {
-                        dto.setAttachmentIds(e.getAttachments().stream()
-                                .map(Attachment::getId)
-                                .collect(Collectors.toList()));
-                    }
-                    
-                    return dto;
-                }).collect(Collectors.toList());
+        MailboxCursor after = MailboxCursor.decode(cursor);
+        int pageSize = MailboxCursor.normalizeLimit(limit);
+        List<EmailHeader> rows = emailRepository.findSpamPage(
+                u.getId(), after.getTimestamp(), after.getId(), PageRequest.of(0, pageSize + 1));
+        return toPage(rows, pageSize, e -> false);
     }
 
     @Transactional
@@ -400,9 +691,12 @@ public List<EmailDto> getDrafts(String username) {
             throw new SecurityException("Unauthorized: You can only mark your own emails as spam");
         }
         
+        MailboxCounterService.Snapshot before = MailboxCounterService.Snapshot.of(email);
         email.setIsSpam(true);
         email.setSpamMarkedAt(LocalDateTime.now());
         emailRepository.save(email);
+        counterService.apply(before, email);
+        changeLog.record(user.getId(), email.getId(), MailboxChangeType.UPSERT);
     }
 
     @Transactional
@@ -415,9 +709,12 @@ public List<EmailDto> getDrafts(String username) {
             throw new SecurityException("Unauthorized: You can only mark your own emails as not spam");
         }
         
+        MailboxCounterService.Snapshot before = MailboxCounterService.Snapshot.of(email);
         email.setIsSpam(false);
         email.setSpamMarkedAt(null);
         emailRepository.save(email);
+        counterService.apply(before, email);
+        changeLog.record(user.getId(), email.getId(), MailboxChangeType.UPSERT);
     }
 
     @Transactional
@@ -430,6 +727,8 @@ public List<EmailDto> getDrafts(String username) {
             throw new SecurityException("Unauthorized: You can only restore your own emails");
         }
         
+        MailboxCounterService.Snapshot before = MailboxCounterService.Snapshot.of(email);
+
         // Restore: unmark as deleted by appropriate party
         if (email.getSenderId().equals(user.getId())) {
             email.setDeletedBySender(false);
@@ -439,5 +738,149 @@ public List<EmailDto> getDrafts(String username) {
         }
         
         emailRepository.save(email);
+        counterService.apply(before, email);
+        changeLog.record(user.getId(), email.getId(), MailboxChangeType.UPSERT);
+    }
+
+    /**
+     * Apply one action to many messages with set-based UPDATEs, one per side of the
+     * message the action touches. Ids the user does not own on that side, or that are
+     * already in the target state, are left alone.
+     *
+     * @return number of messages that changed
+     */
+    @Transactional
+    public int bulkUpdate(BulkAction action, List<Long> ids, String username) {
+        Long userId = userDirectory.idOf(username);
+        Set<Long> distinctIds = new HashSet<>(ids);
+
+        Map<Long, MailboxCounterService.Snapshot> before = new HashMap<>();
+        for (EmailRepository.FolderState state : emailRepository.findFolderStates(distinctIds)) {
+            if (userId.equals(state.getSenderId()) || userId.equals(state.getRecipientId())) {
+                before.put(state.getId(), MailboxCounterService.Snapshot.of(state));
+            }
+        }
+        if (before.isEmpty()) return 0;
+        Set<Long> owned = before.keySet();
+
+        switch (action) {
+            case READ -> emailRepository.bulkSetRead(userId, owned, true);
+            case UNREAD -> emailRepository.bulkSetRead(userId, owned, false);
+            case SPAM -> emailRepository.bulkMarkSpam(userId, owned, LocalDateTime.now());
+            case NOT_SPAM -> emailRepository.bulkMarkNotSpam(userId, owned);
+            case DELETE -> {
+                emailRepository.bulkSetDeletedBySender(userId, owned, true);
+                emailRepository.bulkSetDeletedByRecipient(userId, owned, true);
+            }
+            case RESTORE -> {
+                emailRepository.bulkSetDeletedBySender(userId, owned, false);
+                emailRepository.bulkSetDeletedByRecipient(userId, owned, false);
+            }
+            case PERMANENT -> {
+                emailRepository.bulkPermanentlyDeleteBySender(userId, owned);
+                emailRepository.bulkPermanentlyDeleteByRecipient(userId, owned);
+            }
+        }
+
+        // Re-read the flags rather than re-deriving what the statements did
+        List<MailboxCounterService.Snapshot> was = new ArrayList<>();
+        List<MailboxCounterService.Snapshot> now = new ArrayList<>();
+        List<Long> changedIds = new ArrayList<>();
+        for (EmailRepository.FolderState state : emailRepository.findFolderStates(owned)) {
+            MailboxCounterService.Snapshot after = MailboxCounterService.Snapshot.of(state);
+            MailboxCounterService.Snapshot prior = before.get(state.getId());
+            if (!after.equals(prior)) {
+                was.add(prior);
+                now.add(after);
+                changedIds.add(state.getId());
+            }
+        }
+
+        counterService.applyAll(was, now);
+        changeLog.record(userId, changedIds,
+                action == BulkAction.PERMANENT ? MailboxChangeType.REMOVE : MailboxChangeType.UPSERT);
+        return changedIds.size();
+    }
+
+    private NewMailNotice newMailNotice(EmailMessage saved, String senderUsername, String recipientUsername) {
+        EmailDto header = new EmailDto(new EmailHeader(saved.getId(), saved.getSenderId(), saved.getRecipientId(),
+                saved.getEncryptedSubject(), saved.getSubjectIv(), saved.getEncryptedSymmetricKey(),
+                saved.getSenderEncryptedSymmetricKey(), saved.getTimestamp(), saved.getIsRead()));
+        header.setFromUsername(senderUsername);
+        header.setToUsername(recipientUsername);
+        header.setIsSender(false);
+        header.setAttachmentIds(saved.getAttachments() == null ? new ArrayList<>() : saved.getAttachments().stream()
+                .map(Attachment::getId)
+                .collect(Collectors.toList()));
+        header.setCloudFileIds(saved.getCloudFiles() == null ? new ArrayList<>() : saved.getCloudFiles().stream()
+                .map(CloudFile::getId)
+                .collect(Collectors.toList()));
+        return new NewMailNotice(header, counterService.getCounts(saved.getRecipientId()));
+    }
+
+    /**
+     * Cut a keyset page out of rows fetched with one extra look-ahead row.
+     * Sender and recipient usernames for the whole page are resolved in one batch.
+     */
+    private MailboxPage toPage(List<EmailHeader> rows, int pageSize, Predicate<EmailHeader> isSender) {
+        boolean hasMore = rows.size() > pageSize;
+        List<EmailHeader> page = hasMore ? rows.subList(0, pageSize) : rows;
+        List<EmailDto> emails = toDtos(page, isSender);
+
+        String nextCursor = null;
+        if (hasMore) {
+            EmailHeader last = page.get(page.size() - 1);
+            nextCursor = new MailboxCursor(last.getTimestamp(), last.getId()).encode();
+        }
+        return new MailboxPage(emails, nextCursor, hasMore);
+    }
+
+    /**
+     * Map headers to DTOs with two batched lookups for the whole list: usernames
+     * (mostly from cache) and attachment/cloud-file ids (one join query each).
+     * Never touches the lazy collections, whose SUBSELECT fetch would re-run the folder query.
+     */
+    private List<EmailDto> toDtos(List<EmailHeader> headers, Predicate<EmailHeader> isSender) {
+        if (headers.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Set<Long> userIds = new HashSet<>();
+        for (EmailHeader h : headers) {
+            userIds.add(h.getSenderId());
+            userIds.add(h.getRecipientId());
+        }
+        Map<Long, String> usernames = userDirectory.usernamesFor(userIds);
+
+        List<EmailDto> dtos = headers.stream().map(h -> {
+            EmailDto dto = new EmailDto(h);
+            dto.setFromUsername(usernames.getOrDefault(h.getSenderId(), UserDirectory.UNKNOWN_USERNAME));
+            dto.setToUsername(usernames.getOrDefault(h.getRecipientId(), UserDirectory.UNKNOWN_USERNAME));
+            dto.setIsSender(isSender.test(h));
+            return dto;
+        }).collect(Collectors.toList());
+        hydrateLinks(dtos);
+        return dtos;
+    }
+
+    /**
+     * Fill attachmentIds and cloudFileIds of the given DTOs, one join query per association.
+     */
+    public void hydrateLinks(List<EmailDto> dtos) {
+        List<Long> emailIds = dtos.stream().map(EmailDto::getId).collect(Collectors.toList());
+
+        Map<Long, List<Long>> attachmentIds = new HashMap<>();
+        for (EmailRepository.AttachmentLink link : emailRepository.findAttachmentLinks(emailIds)) {
+            attachmentIds.computeIfAbsent(link.getEmailId(), k -> new ArrayList<>()).add(link.getAttachmentId());
+        }
+        Map<Long, List<Long>> cloudFileIds = new HashMap<>();
+        for (EmailRepository.CloudFileLink link : emailRepository.findCloudFileLinks(emailIds)) {
+            cloudFileIds.computeIfAbsent(link.getEmailId(), k -> new ArrayList<>()).add(link.getCloudFileId());
+        }
+
+        for (EmailDto dto : dtos) {
+            dto.setAttachmentIds(attachmentIds.getOrDefault(dto.getId(), new ArrayList<>()));
+            dto.setCloudFileIds(cloudFileIds.getOrDefault(dto.getId(), new ArrayList<>()));
+        }
     }
-}
\ No newline at end of file
+}
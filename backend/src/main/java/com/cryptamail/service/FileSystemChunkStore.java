@@ -0,0 +1,173 @@
+package com.cryptamail.service;
+
+import com.cryptamail.model.AttachmentChunk;
+import com.cryptamail.util.BufferPool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Stores each chunk as its own file under a root directory:
+ * {@code <root>/<aa>/<bb>/<attachmentId>/<index>.<unique>.chunk}, where aa and bb are
+ * the low two bytes of the attachment id in hex, so no directory grows past 256
+ * entries before the per-attachment level.
+ *
+ * Every upload gets a file of its own, streamed through a pooled buffer and forced
+ * to disk together with its directory entry, so the file survives a crash once the
+ * row is saved; the chunk row records which file it is. Concurrent uploads of one index
+ * therefore never overwrite each other, and the one that loses the race to save its
+ * row discards its file. The directory depends on the attachment id alone, which
+ * lets a whole attachment be deleted without reading its rows.
+ */
+@Component
+public class FileSystemChunkStore implements ChunkStore {
+
+    public static final String NAME = "filesystem";
+
+    private final Path root;
+    private final BufferPool buffers;
+
+    public FileSystemChunkStore(
+            @Value("${attachment.storage.filesystem.root:./data/attachment-chunks}") String root,
+            @Value("${attachment.storage.filesystem.buffer-size:65536}") int bufferSize,
+            @Value("${attachment.storage.filesystem.buffer-pool-size:64}") int bufferPoolSize
+    ) {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        this.buffers = new BufferPool(bufferSize, bufferPoolSize);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void write(AttachmentChunk chunk, ReadableByteChannel source, long size) throws IOException {
+        Long attachmentId = chunk.getAttachment().getId();
+        Path dir = attachmentDir(attachmentId);
+        boolean newDir = !Files.isDirectory(dir);
+        Files.createDirectories(dir);
+
+        Path target = Files.createTempFile(dir, chunk.getChunkIndex() + ".", ".chunk");
+        ByteBuffer buffer = buffers.acquire();
+        boolean written = false;
+        try {
+            try (FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long remaining = size;
+                while (remaining > 0) {
+                    buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+                    ChunkStore.fill(source, buffer, size);
+                    remaining -= buffer.position();
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                }
+                ChunkStore.requireEnd(source, buffer, size);
+                out.force(true);
+            }
+            // The file's data is on disk; its name is not until the directory is forced too
+            forceDirectory(dir);
+            if (newDir) {
+                for (Path parent = dir.getParent(); parent != null && parent.startsWith(root); parent = parent.getParent()) {
+                    forceDirectory(parent);
+                }
+            }
+            written = true;
+        } finally {
+            buffers.release(buffer);
+            if (!written) {
+                Files.deleteIfExists(target);
+            }
+        }
+
+        chunk.setLocation(root.relativize(target).toString());
+        chunk.setEncryptedData(null);
+    }
+
+    @Override
+    public byte[] read(AttachmentChunk chunk) throws IOException {
+        return Files.readAllBytes(resolve(chunk));
+    }
+
+    @Override
+    public long length(AttachmentChunk chunk) throws IOException {
+        return Files.size(resolve(chunk));
+    }
+
+    @Override
+    public void transferTo(AttachmentChunk chunk, long position, long count, WritableByteChannel target)
+            throws IOException {
+        try (FileChannel in = FileChannel.open(resolve(chunk), StandardOpenOption.READ)) {
+            long end = position + count;
+            while (position < end) {
+                long sent = in.transferTo(position, end - position, target);
+                if (sent <= 0) {
+                    throw new IOException("Chunk file ended at byte " + position + " of " + end);
+                }
+                position += sent;
+            }
+        }
+    }
+
+    @Override
+    public void discard(AttachmentChunk chunk) throws IOException {
+        if (chunk.getLocation() != null) {
+            Files.deleteIfExists(resolve(chunk));
+        }
+    }
+
+    @Override
+    public void deleteAll(Long attachmentId) throws IOException {
+        Path dir = attachmentDir(attachmentId);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    /**
+     * Absolute path of a stored chunk; refuses locations outside the root.
+     */
+    Path resolve(AttachmentChunk chunk) throws IOException {
+        if (chunk.getLocation() == null) {
+            throw new NoSuchFileException("Chunk " + chunk.getChunkIndex() + " has no file location");
+        }
+        Path path = root.resolve(chunk.getLocation()).normalize();
+        if (!path.startsWith(root)) {
+            throw new IOException("Chunk location outside the storage root: " + chunk.getLocation());
+        }
+        return path;
+    }
+
+    private static void forceDirectory(Path dir) throws IOException {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            // Windows cannot open a directory as a channel; NTFS journals the entry itself
+        }
+    }
+
+    private Path attachmentDir(Long attachmentId) {
+        long id = attachmentId;
+        return root.resolve(String.format("%02x", id & 0xff))
+                .resolve(String.format("%02x", (id >> 8) & 0xff))
+                .resolve(Long.toString(id));
+    }
+}
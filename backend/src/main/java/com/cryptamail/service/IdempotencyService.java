@@ -0,0 +1,196 @@
+package com.cryptamail.service;
+
+import com.cryptamail.model.IdempotencyRecord;
+import com.cryptamail.repository.IdempotencyRecordRepository;
+import com.cryptamail.util.BoundedCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+
+/**
+ * Makes retried POSTs safe for requests carrying an Idempotency-Key header.
+ *
+ * The first request with a key claims it by inserting an idempotency_keys row in
+ * its own transaction, so a concurrent retry sees the claim and gets 409. The
+ * request then runs in a transaction that also stores its response on that row:
+ * either both commit or neither does, and a failed request releases the key.
+ * Later requests with the key get the stored response replayed, from a bounded
+ * in-memory cache when possible. Keys expire after the retention window.
+ *
+ * A claim still uncompleted after the lease was abandoned by a crash before it
+ * could be released; the next retry takes it over instead of getting 409 until
+ * the key expires. The lease must outlast the slowest request.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+    private static final int MAX_KEY_LENGTH = 128;
+
+    private final IdempotencyRecordRepository repository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate requestTx;
+    private final TransactionTemplate claimTx;
+    private final BoundedCache<String, Stored> completed;
+    private final long retentionHours;
+    private final Duration lease;
+
+    private record Stored(String requestHash, int status, String body) {
+    }
+
+    public IdempotencyService(
+            IdempotencyRecordRepository repository,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager,
+            @Value("${mailbox.idempotency.cache-size:10000}") int cacheSize,
+            @Value("${mailbox.idempotency.retention-hours:24}") long retentionHours,
+            @Value("${mailbox.idempotency.lease-seconds:300}") long leaseSeconds
+    ) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.requestTx = new TransactionTemplate(transactionManager);
+        this.claimTx = new TransactionTemplate(transactionManager);
+        this.claimTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.completed = new BoundedCache<>(cacheSize, Duration.ofHours(retentionHours));
+        this.retentionHours = retentionHours;
+        this.lease = Duration.ofSeconds(leaseSeconds);
+    }
+
+    /**
+     * Run action at most once per (scope, username, key).
+     *
+     * @param key     the Idempotency-Key header, or null to just run the action
+     * @param request the request body; reusing a key for a different body is a 422
+     * @return the action's response, or the stored one if the key was used before
+     */
+    public ResponseEntity<?> execute(String scope, String username, String key, Object request,
+                                     Supplier<ResponseEntity<?>> action) {
+        if (key == null) {
+            return action.get();
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key must be 1-" + MAX_KEY_LENGTH + " characters");
+        }
+
+        String id = scope + ":" + username + ":" + key;
+        String requestHash = hash(request);
+
+        Stored stored = completed.get(id);
+        if (stored == null) {
+            try {
+                claimTx.executeWithoutResult(status -> repository.claim(id, requestHash, LocalDateTime.now()));
+            } catch (DataIntegrityViolationException taken) {
+                stored = load(id, requestHash);
+            }
+        }
+        if (stored != null) {
+            return replay(stored, requestHash);
+        }
+
+        ResponseEntity<?> response;
+        try {
+            response = requestTx.execute(status -> {
+                ResponseEntity<?> result = action.get();
+                repository.complete(id, result.getStatusCode().value(), serialize(result.getBody()));
+                return result;
+            });
+        } catch (RuntimeException e) {
+            // Nothing of the request was committed, so the client may retry with the same key
+            try {
+                claimTx.executeWithoutResult(status -> repository.deleteById(id));
+            } catch (RuntimeException releaseFailure) {
+                logger.warn("Could not release idempotency key {}: {}", id, releaseFailure.getMessage());
+            }
+            throw e;
+        }
+
+        completed.put(id, new Stored(requestHash, response.getStatusCode().value(), serialize(response.getBody())));
+        return response;
+    }
+
+    @Scheduled(cron = "0 5 * * * ?")
+    public void purgeExpired() {
+        int deleted = repository.deleteOlderThan(LocalDateTime.now().minusHours(retentionHours));
+        if (deleted > 0) {
+            logger.info("Purged {} idempotency keys older than {}h", deleted, retentionHours);
+        }
+    }
+
+    /**
+     * @return the stored response, or null if an abandoned claim was taken over and
+     *         the request should run
+     */
+    private Stored load(String id, String requestHash) {
+        IdempotencyRecord record = repository.findById(id).orElse(null);
+        if (record != null && !record.isCompleted() && reclaim(id, requestHash)) {
+            logger.info("Took over abandoned idempotency key {}", id);
+            return null;
+        }
+        if (record == null || !record.isCompleted()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "A request with this Idempotency-Key is still being processed");
+        }
+        Stored stored = new Stored(record.getRequestHash(), record.getResponseStatus(), record.getResponseBody());
+        completed.put(id, stored);
+        return stored;
+    }
+
+    private boolean reclaim(String id, String requestHash) {
+        LocalDateTime now = LocalDateTime.now();
+        Integer updated = claimTx.execute(status -> repository.reclaim(id, requestHash, now, now.minus(lease)));
+        return updated != null && updated == 1;
+    }
+
+    private ResponseEntity<?> replay(Stored stored, String requestHash) {
+        if (!stored.requestHash().equals(requestHash)) {
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                    "Idempotency-Key was already used for a different request");
+        }
+        try {
+            return ResponseEntity.status(stored.status())
+                    .header(REPLAYED_HEADER, "true")
+                    .body(stored.body() != null ? objectMapper.readTree(stored.body()) : null);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unreadable stored response", e);
+        }
+    }
+
+    private String serialize(Object body) {
+        if (body == null) return null;
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Response cannot be stored for replay", e);
+        }
+    }
+
+    private String hash(Object request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Request cannot be fingerprinted", e);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.cryptamail.service;
+
+import com.cryptamail.model.EmailMessage;
+import com.cryptamail.model.MailboxChange;
+import com.cryptamail.model.MailboxChangeType;
+import com.cryptamail.repository.EmailRepository;
+import com.cryptamail.repository.MailboxChangeRepository;
+import com.cryptamail.repository.MailboxCountersRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Per-user mailbox change log backing GET /api/emails/changes.
+ *
+ * Every mutation appends one row per affected user and message, numbered from
+ * mailbox_counters.change_seq. Sequence numbers are reserved by an UPDATE of the
+ * user's counter row inside the mutating transaction, so per user they are gap-free
+ * and committed in order. Rows older than the retention window are purged hourly;
+ * a client whose position falls before the oldest retained row must resync.
+ *
+ * The latest committed sequence number doubles as the user's mailbox version for
+ * folder ETags. It is read from the counter row on every request rather than cached,
+ * so all instances agree on it whichever one made the change.
+ */
+@Service
+public class MailboxChangeLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailboxChangeLog.class);
+
+    private final MailboxChangeRepository changeRepository;
+    private final MailboxCountersRepository countersRepository;
+    private final MailboxCounterService counterService;
+    private final EmailRepository emailRepository;
+
+    @Value("${mailbox.changes.retention-hours:72}")
+    private long retentionHours;
+
+    @Value("${mailbox.changes.max-batch:1000}")
+    private int maxBatch;
+
+    public MailboxChangeLog(MailboxChangeRepository changeRepository,
+                            MailboxCountersRepository countersRepository,
+                            MailboxCounterService counterService,
+                            EmailRepository emailRepository) {
+        this.changeRepository = changeRepository;
+        this.countersRepository = countersRepository;
+        this.counterService = counterService;
+        this.emailRepository = emailRepository;
+    }
+
+    @Transactional
+    public void record(Long userId, Long emailId, MailboxChangeType type) {
+        record(userId, List.of(emailId), type);
+    }
+
+    @Transactional
+    public void record(Long userId, Collection<Long> emailIds, MailboxChangeType type) {
+        if (emailIds.isEmpty()) return;
+
+        long n = emailIds.size();
+        if (countersRepository.advanceChangeSeq(userId, n) == 0) {
+            counterService.initialize(userId);
+            countersRepository.advanceChangeSeq(userId, n);
+        }
+        long seq = countersRepository.findChangeSeq(userId) - n;
+
+        List<MailboxChange> changes = new ArrayList<>(emailIds.size());
+        for (Long emailId : emailIds) {
+            changes.add(new MailboxChange(null, userId, ++seq, emailId, type, null));
+        }
+        changeRepository.saveAll(changes);
+    }
+
+    /**
+     * Record a change visible to both the sender and the recipient of a message.
+     * Sequence numbers are reserved in ascending user id order, the order
+     * MailboxCounterService locks the same rows in, so concurrent sends between two
+     * users cannot deadlock.
+     */
+    @Transactional
+    public void recordForParticipants(EmailMessage email, MailboxChangeType type) {
+        Long senderId = email.getSenderId();
+        Long recipientId = email.getRecipientId();
+        if (recipientId.equals(senderId)) {
+            record(senderId, email.getId(), type);
+            return;
+        }
+        record(Math.min(senderId, recipientId), email.getId(), type);
+        record(Math.max(senderId, recipientId), email.getId(), type);
+    }
+
+    /**
+     * A rename changes the username shown on every message the user sent or
+     * received, so each message still listed for either participant is recorded
+     * again for them. Users are recorded in ascending id order, like
+     * {@link #recordForParticipants(EmailMessage, MailboxChangeType)}.
+     */
+    @Transactional
+    public void recordRename(Long userId) {
+        Map<Long, Set<Long>> listed = new TreeMap<>();
+        for (EmailRepository.FolderState state : emailRepository.findFolderStatesOfParticipant(userId)) {
+            MailboxCounterService.Snapshot snapshot = MailboxCounterService.Snapshot.of(state);
+            for (Long participant : new HashSet<>(List.of(state.getSenderId(), state.getRecipientId()))) {
+                if (!snapshot.folders(participant).isEmpty()) {
+                    listed.computeIfAbsent(participant, k -> new LinkedHashSet<>()).add(state.getId());
+                }
+            }
+        }
+        listed.forEach((participant, ids) -> record(participant, ids, MailboxChangeType.UPSERT));
+    }
+
+    @Transactional(readOnly = true)
+    public long latestSeq(Long userId) {
+        Long seq = countersRepository.findChangeSeq(userId);
+        return seq != null ? seq : 0L;
+    }
+
+    /**
+     * Current mailbox version of a user: the latest committed sequence number.
+     */
+    @Transactional(readOnly = true)
+    public long version(Long userId) {
+        return latestSeq(userId);
+    }
+
+    /**
+     * Changes in (since, upTo], oldest first.
+     *
+     * @return the changes, or null if the client has to resync: part of the range was
+     *         already purged, or it is longer than one batch
+     */
+    @Transactional(readOnly = true)
+    public List<MailboxChange> changesBetween(Long userId, long since, long upTo) {
+        if (since < 0 || since > upTo || upTo - since > maxBatch) {
+            return null;
+        }
+        List<MailboxChange> changes = changeRepository.findChangesBetween(
+                userId, since, upTo, PageRequest.of(0, maxBatch));
+        // Sequence numbers are gap-free, so anything but since+1..upTo means rows were purged
+        if (changes.size() != upTo - since || (!changes.isEmpty() && changes.get(0).getSeq() != since + 1)) {
+            return null;
+        }
+        return changes;
+    }
+
+    @Transactional
+    public void delete(Long userId) {
+        changeRepository.deleteByUserId(userId);
+    }
+
+    @Scheduled(cron = "0 15 * * * ?")
+    public void purgeExpired() {
+        int deleted = changeRepository.deleteOlderThan(LocalDateTime.now().minusHours(retentionHours));
+        if (deleted > 0) {
+            logger.info("Purged {} mailbox change log entries older than {}h", deleted, retentionHours);
+        }
+    }
+}
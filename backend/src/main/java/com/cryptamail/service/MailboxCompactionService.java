@@ -0,0 +1,126 @@
+package com.cryptamail.service;
+
+import com.cryptamail.repository.AttachmentChunkRepository;
+import com.cryptamail.repository.AttachmentRepository;
+import com.cryptamail.repository.EmailRepository;
+import com.cryptamail.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Hard-deletes messages that both parties have permanently deleted.
+ *
+ * Permanent delete and empty trash only set flags, so without this job email_messages
+ * keeps every row ever sent. Each run removes bounded batches, one transaction per
+ * batch: the join rows go first, then the messages, then any attachment no remaining
+ * message links to has its chunks deleted and its uploader's storage released.
+ */
+@Service
+public class MailboxCompactionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailboxCompactionService.class);
+
+    private final EmailRepository emailRepository;
+    private final AttachmentRepository attachmentRepository;
+    private final AttachmentChunkRepository chunkRepository;
+    private final UserRepository userRepository;
+    private final MailboxCounterService counterService;
+    private final ChunkStorage chunkStorage;
+    private final TransactionTemplate tx;
+
+    @Value("${mailbox.compaction.batch-size:500}")
+    private int batchSize;
+
+    @Value("${mailbox.compaction.max-batches:200}")
+    private int maxBatches;
+
+    public MailboxCompactionService(
+            EmailRepository emailRepository,
+            AttachmentRepository attachmentRepository,
+            AttachmentChunkRepository chunkRepository,
+            UserRepository userRepository,
+            MailboxCounterService counterService,
+            ChunkStorage chunkStorage,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.emailRepository = emailRepository;
+        this.attachmentRepository = attachmentRepository;
+        this.chunkRepository = chunkRepository;
+        this.userRepository = userRepository;
+        this.counterService = counterService;
+        this.chunkStorage = chunkStorage;
+        this.tx = new TransactionTemplate(transactionManager);
+    }
+
+    // Run daily after the spam cleanup, before counter reconciliation
+    @Scheduled(cron = "0 15 3 * * ?")
+    public void compact() {
+        int messages = 0;
+        int attachments = 0;
+        for (int batch = 0; batch < maxBatches; batch++) {
+            int[] removed;
+            try {
+                removed = tx.execute(status -> compactBatch());
+            } catch (Exception e) {
+                logger.error("Mailbox compaction batch failed: {}", e.getMessage());
+                break;
+            }
+            messages += removed[0];
+            attachments += removed[1];
+            if (removed[0] < batchSize) break;
+        }
+        if (messages > 0) {
+            logger.info("Mailbox compaction removed {} messages and released {} attachments", messages, attachments);
+        }
+    }
+
+    /**
+     * @return {messages removed, attachments released}
+     */
+    private int[] compactBatch() {
+        List<Long> ids = emailRepository.findPurgeableIds(PageRequest.of(0, batchSize));
+        if (ids.isEmpty()) return new int[] {0, 0};
+
+        // Repairs counters of rows deleted without clearing the folder flags. One pass in
+        // ascending user id order that skips unchanged users, so a batch locks no more rows
+        // than it updates and cannot deadlock with sends
+        List<MailboxCounterService.Snapshot> before = new ArrayList<>();
+        for (EmailRepository.FolderState state : emailRepository.findFolderStates(ids)) {
+            before.add(MailboxCounterService.Snapshot.of(state));
+        }
+        counterService.applyAll(before, Collections.nCopies(before.size(), null));
+
+        Set<Long> attachmentIds = new HashSet<>();
+        for (EmailRepository.AttachmentLink link : emailRepository.findAttachmentLinks(ids)) {
+            attachmentIds.add(link.getAttachmentId());
+        }
+
+        emailRepository.deleteAttachmentLinks(ids);
+        emailRepository.deleteCloudFileLinks(ids);
+        int messages = emailRepository.deleteByIdIn(ids);
+
+        // Attachments can be shared by the copies of a multi-recipient send
+        List<Long> orphans = attachmentIds.isEmpty() ? List.of() : attachmentRepository.findUnlinkedIds(attachmentIds);
+        if (!orphans.isEmpty()) {
+            chunkRepository.deleteByAttachmentIdIn(orphans);
+            chunkStorage.deleteAll(orphans);
+            for (AttachmentRepository.UploaderUsage usage : attachmentRepository.sumSizeByUploader(orphans)) {
+                userRepository.releaseStorage(usage.getUploaderId(), usage.getBytes());
+            }
+            attachmentRepository.markDeleted(orphans);
+        }
+        return new int[] {messages, orphans.size()};
+    }
+}
@@ -0,0 +1,291 @@
+package com.cryptamail.service;
+
+import com.cryptamail.dto.MailboxCountsResponse;
+import com.cryptamail.model.EmailMessage;
+import com.cryptamail.model.MailboxCounters;
+import com.cryptamail.repository.EmailRepository;
+import com.cryptamail.repository.MailboxCountersRepository;
+import com.cryptamail.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Maintains the per-user mailbox_counters row.
+ *
+ * Mutations capture a {@link Snapshot} of the message before changing it and call
+ * {@link #apply(Snapshot, EmailMessage)} afterwards; the difference in folder
+ * membership is applied to the sender's and recipient's counters in the same
+ * transaction. A nightly job recomputes every row with aggregate SQL to repair drift.
+ *
+ * Counter rows are also where MailboxChangeLog reserves sequence numbers, so a
+ * transaction touching two users' rows takes them in ascending user id order, here
+ * and in the change log; otherwise A->B and B->A sends could each hold the row the
+ * other needs.
+ */
+@Service
+public class MailboxCounterService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailboxCounterService.class);
+    private static final int RECONCILE_BATCH_SIZE = 500;
+
+    private final MailboxCountersRepository countersRepository;
+    private final UserRepository userRepository;
+
+    public MailboxCounterService(MailboxCountersRepository countersRepository, UserRepository userRepository) {
+        this.countersRepository = countersRepository;
+        this.userRepository = userRepository;
+    }
+
+    @Transactional
+    public MailboxCountsResponse getCounts(Long userId) {
+        MailboxCounters counters = countersRepository.findById(userId)
+                .orElseGet(() -> initialize(userId));
+        return new MailboxCountsResponse(
+                counters.getInboxTotal(),
+                counters.getUnread(),
+                counters.getSpam(),
+                counters.getTrash()
+        );
+    }
+
+    /**
+     * Create the counter row for a user, computed from their current messages.
+     */
+    @Transactional
+    public MailboxCounters initialize(Long userId) {
+        countersRepository.insertEmpty(userId);
+        countersRepository.recompute(userId);
+        return countersRepository.findById(userId).orElseThrow();
+    }
+
+    /**
+     * Apply the folder membership change of one message.
+     *
+     * @param before state before the mutation, or null for a new message
+     * @param after  the mutated message, or null if it was hard deleted
+     */
+    @Transactional
+    public void apply(Snapshot before, EmailMessage after) {
+        Snapshot next = after != null ? Snapshot.of(after) : null;
+        Snapshot any = before != null ? before : next;
+        if (any == null) return;
+
+        if (any.recipientId.equals(any.senderId)) {
+            applyFor(any.senderId, before, next);
+            return;
+        }
+        Long first = Math.min(any.senderId, any.recipientId);
+        Long second = Math.max(any.senderId, any.recipientId);
+        // Lock both rows in order even if one is unchanged: the change log writes both next
+        if (!applyFor(first, before, next)) {
+            countersRepository.lockRow(first);
+        }
+        if (!applyFor(second, before, next)) {
+            countersRepository.lockRow(second);
+        }
+    }
+
+    /**
+     * Apply the folder membership changes of many messages, one counter update per
+     * affected user, in ascending user id order; users whose counters do not change
+     * are not touched. Both lists are matched by position; an after entry is null
+     * for a message that was hard deleted.
+     */
+    @Transactional
+    public void applyAll(List<Snapshot> before, List<Snapshot> after) {
+        // Sorted, so counter rows are locked in ascending user id order
+        Map<Long, long[]> deltas = new TreeMap<>();
+        for (int i = 0; i < before.size(); i++) {
+            Snapshot was = before.get(i);
+            Snapshot now = after.get(i);
+            addDelta(deltas, was.senderId, was, now);
+            if (!was.recipientId.equals(was.senderId)) {
+                addDelta(deltas, was.recipientId, was, now);
+            }
+        }
+        deltas.forEach((userId, d) -> adjust(userId, d[0], d[1], d[2], d[3]));
+    }
+
+    @Transactional
+    public void adjust(Long userId, long inbox, long unread, long spam, long trash) {
+        if (inbox == 0 && unread == 0 && spam == 0 && trash == 0) return;
+        if (countersRepository.applyDelta(userId, inbox, unread, spam, trash) == 0) {
+            // No row yet: build it from the table, which already includes this change
+            initialize(userId);
+        }
+    }
+
+    /**
+     * Lock the counter rows of several users up front, in ascending user id order, for a
+     * transaction that goes on to send mail between them in some other order.
+     */
+    @Transactional
+    public void lockInOrder(Collection<Long> userIds) {
+        new TreeSet<>(userIds).forEach(countersRepository::lockRow);
+    }
+
+    @Transactional
+    public void reconcile(Long userId) {
+        if (countersRepository.recompute(userId) == 0) {
+            initialize(userId);
+        }
+    }
+
+    @Transactional
+    public void delete(Long userId) {
+        countersRepository.deleteById(userId);
+    }
+
+    // Run daily after the spam cleanup
+    @Scheduled(cron = "0 30 3 * * ?")
+    public void reconcileAll() {
+        logger.info("Starting mailbox counter reconciliation...");
+        long lastId = 0L;
+        int reconciled = 0;
+        List<Long> ids;
+        do {
+            ids = userRepository.findIdsAfter(lastId, PageRequest.of(0, RECONCILE_BATCH_SIZE));
+            for (Long userId : ids) {
+                try {
+                    reconcile(userId);
+                    reconciled++;
+                } catch (Exception e) {
+                    logger.warn("Failed to reconcile mailbox counters for user {}: {}", userId, e.getMessage());
+                }
+                lastId = userId;
+            }
+        } while (ids.size() == RECONCILE_BATCH_SIZE);
+        logger.info("Mailbox counter reconciliation completed for {} users", reconciled);
+    }
+
+    /**
+     * @return false if userId's counters did not change
+     */
+    private boolean applyFor(Long userId, Snapshot before, Snapshot after) {
+        long[] was = before != null ? before.contribution(userId) : new long[4];
+        long[] now = after != null ? after.contribution(userId) : new long[4];
+        if (Arrays.equals(was, now)) return false;
+        adjust(userId, now[0] - was[0], now[1] - was[1], now[2] - was[2], now[3] - was[3]);
+        return true;
+    }
+
+    private void addDelta(Map<Long, long[]> deltas, Long userId, Snapshot before, Snapshot after) {
+        long[] was = before.contribution(userId);
+        long[] now = after != null ? after.contribution(userId) : new long[4];
+        long[] d = deltas.computeIfAbsent(userId, k -> new long[4]);
+        for (int i = 0; i < d.length; i++) {
+            d[i] += now[i] - was[i];
+        }
+    }
+
+    /**
+     * Folder-relevant flags of a message at one point in time.
+     */
+    public static final class Snapshot {
+        private final Long senderId;
+        private final Long recipientId;
+        private final boolean draft;
+        private final boolean read;
+        private final boolean spam;
+        private final boolean deletedBySender;
+        private final boolean deletedByRecipient;
+        private final boolean permanentlyDeletedBySender;
+        private final boolean permanentlyDeletedByRecipient;
+
+        private Snapshot(Long senderId, Long recipientId, boolean draft, boolean read, boolean spam,
+                         boolean deletedBySender, boolean deletedByRecipient,
+                         boolean permanentlyDeletedBySender, boolean permanentlyDeletedByRecipient) {
+            this.senderId = senderId;
+            this.recipientId = recipientId;
+            this.draft = draft;
+            this.read = read;
+            this.spam = spam;
+            this.deletedBySender = deletedBySender;
+            this.deletedByRecipient = deletedByRecipient;
+            this.permanentlyDeletedBySender = permanentlyDeletedBySender;
+            this.permanentlyDeletedByRecipient = permanentlyDeletedByRecipient;
+        }
+
+        public static Snapshot of(EmailMessage e) {
+            return new Snapshot(e.getSenderId(), e.getRecipientId(), e.getIsDraft(), e.getIsRead(), e.getIsSpam(),
+                    e.getDeletedBySender(), e.getDeletedByRecipient(),
+                    e.getPermanentlyDeletedBySender(), e.getPermanentlyDeletedByRecipient());
+        }
+
+        public static Snapshot of(EmailRepository.FolderState s) {
+            return new Snapshot(s.getSenderId(), s.getRecipientId(), s.getIsDraft(), s.getIsRead(), s.getIsSpam(),
+                    s.getDeletedBySender(), s.getDeletedByRecipient(),
+                    s.getPermanentlyDeletedBySender(), s.getPermanentlyDeletedByRecipient());
+        }
+
+        /**
+         * @return {inbox, unread, spam, trash} contribution of this message to userId's counters,
+         *         using the same predicates as the folder queries
+         */
+        long[] contribution(Long userId) {
+            boolean inInbox = inInbox(userId);
+            return new long[] {
+                    inInbox ? 1 : 0,
+                    inInbox && !read ? 1 : 0,
+                    inSpam(userId) ? 1 : 0,
+                    inTrash(userId) ? 1 : 0
+            };
+        }
+
+        /**
+         * @return names of the folders this message is listed in for userId; empty once it is gone for them
+         */
+        public List<String> folders(Long userId) {
+            List<String> folders = new ArrayList<>(2);
+            if (inInbox(userId)) folders.add("inbox");
+            if (userId.equals(senderId) && !draft && !deletedBySender) folders.add("sent");
+            if (userId.equals(senderId) && draft) folders.add("drafts");
+            if (inSpam(userId)) folders.add("spam");
+            if (inTrash(userId)) folders.add("trash");
+            return folders;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Snapshot s)) return false;
+            return draft == s.draft && read == s.read && spam == s.spam
+                    && deletedBySender == s.deletedBySender && deletedByRecipient == s.deletedByRecipient
+                    && permanentlyDeletedBySender == s.permanentlyDeletedBySender
+                    && permanentlyDeletedByRecipient == s.permanentlyDeletedByRecipient
+                    && Objects.equals(senderId, s.senderId) && Objects.equals(recipientId, s.recipientId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(senderId, recipientId, draft, read, spam, deletedBySender, deletedByRecipient,
+                    permanentlyDeletedBySender, permanentlyDeletedByRecipient);
+        }
+
+        private boolean inInbox(Long userId) {
+            return userId.equals(recipientId) && !draft && !deletedByRecipient;
+        }
+
+        private boolean inSpam(Long userId) {
+            return userId.equals(recipientId) && spam && !deletedByRecipient;
+        }
+
+        private boolean inTrash(Long userId) {
+            return (userId.equals(senderId) && deletedBySender && !permanentlyDeletedBySender)
+                    || (userId.equals(recipientId) && deletedByRecipient && !permanentlyDeletedByRecipient);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.cryptamail.service;
+
+import com.cryptamail.dto.EmailDto;
+import com.cryptamail.model.EmailMessage;
+import com.cryptamail.repository.EmailRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.EntityManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Writes a whole folder, bodies included, as one JSON array (GET /api/emails/export).
+ *
+ * Messages are read from a forward-only EmailRepository stream and written through a
+ * JsonGenerator in batches; after each batch the generator is flushed and the
+ * persistence context cleared, so heap use stays flat however large the folder is.
+ */
+@Service
+public class MailboxExportService {
+
+    private static final int BATCH_SIZE = 100;
+
+    public enum Folder {
+        INBOX, SENT, DRAFTS, TRASH, SPAM;
+
+        public static Folder from(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown folder: " + name);
+            }
+        }
+    }
+
+    private final EmailRepository emailRepository;
+    private final EmailService emailService;
+    private final UserDirectory userDirectory;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter dtoWriter;
+    private final TransactionTemplate readOnlyTx;
+
+    public MailboxExportService(
+            EmailRepository emailRepository,
+            EmailService emailService,
+            UserDirectory userDirectory,
+            EntityManager entityManager,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.emailRepository = emailRepository;
+        this.emailService = emailService;
+        this.userDirectory = userDirectory;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        // Flushing is done once per batch instead
+        this.dtoWriter = objectMapper.writerFor(EmailDto.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+    }
+
+    /**
+     * Runs on the StreamingResponseBody thread, so it opens its own transaction
+     * for the lifetime of the database cursor.
+     */
+    public void export(String username, Folder folder, OutputStream out) {
+        Long userId = userDirectory.idOf(username);
+        readOnlyTx.executeWithoutResult(status -> {
+            try (Stream<EmailMessage> messages = open(folder, userId);
+                 JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+                json.writeStartArray();
+                List<EmailMessage> batch = new ArrayList<>(BATCH_SIZE);
+                Iterator<EmailMessage> it = messages.iterator();
+                while (it.hasNext()) {
+                    batch.add(it.next());
+                    if (batch.size() == BATCH_SIZE) {
+                        writeBatch(json, batch, folder, userId);
+                    }
+                }
+                writeBatch(json, batch, folder, userId);
+                json.writeEndArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private Stream<EmailMessage> open(Folder folder, Long userId) {
+        return switch (folder) {
+            case INBOX -> emailRepository.streamInbox(userId);
+            case SENT -> emailRepository.streamSent(userId);
+            case DRAFTS -> emailRepository.streamDrafts(userId);
+            case TRASH -> emailRepository.streamTrash(userId);
+            case SPAM -> emailRepository.streamSpam(userId);
+        };
+    }
+
+    private void writeBatch(JsonGenerator json, List<EmailMessage> batch, Folder folder, Long userId)
+            throws IOException {
+        if (batch.isEmpty()) return;
+
+        Set<Long> userIds = new HashSet<>();
+        for (EmailMessage e : batch) {
+            userIds.add(e.getSenderId());
+            userIds.add(e.getRecipientId());
+        }
+        Map<Long, String> usernames = userDirectory.usernamesFor(userIds);
+
+        List<EmailDto> dtos = new ArrayList<>(batch.size());
+        for (EmailMessage e : batch) {
+            EmailDto dto = new EmailDto(e);
+            dto.setFromUsername(usernames.getOrDefault(e.getSenderId(), UserDirectory.UNKNOWN_USERNAME));
+            dto.setToUsername(usernames.getOrDefault(e.getRecipientId(), UserDirectory.UNKNOWN_USERNAME));
+            dto.setIsSender(switch (folder) {
+                case SENT, DRAFTS -> true;
+                case INBOX, SPAM -> false;
+                case TRASH -> e.getSenderId().equals(userId);
+            });
+            dtos.add(dto);
+        }
+        emailService.hydrateLinks(dtos);
+
+        for (EmailDto dto : dtos) {
+            dtoWriter.writeValue(json, dto);
+        }
+        json.flush();
+
+        // Drop the written ciphertext: nothing below the generator holds on to it now
+        batch.clear();
+        entityManager.clear();
+    }
+}
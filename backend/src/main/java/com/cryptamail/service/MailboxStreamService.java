@@ -0,0 +1,182 @@
+package com.cryptamail.service;
+
+import com.cryptamail.dto.NewMailNotice;
+import com.cryptamail.model.User;
+import com.cryptamail.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Open Server-Sent Events connections per user (GET /api/emails/stream).
+ *
+ * Emitters live in a ConcurrentHashMap of small copy-on-write lists: pushes and
+ * heartbeats iterate without locking, and registration only contends on the
+ * map bin of the same user. Each user keeps at most max-per-user connections;
+ * opening another one closes the oldest. Idle connections hold no request thread.
+ *
+ * SseEmitter.send blocks while the client's TCP window is full, so writes run on a
+ * small push pool, serialized per emitter: a stuck client only holds up its own
+ * queue. Heartbeats skip emitters that still have writes queued, and drop any
+ * whose current write has been blocked for longer than send-timeout.
+ */
+@Service
+public class MailboxStreamService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailboxStreamService.class);
+
+    private final UserRepository userRepository;
+    private final Map<Long, CopyOnWriteArrayList<SseEmitter>> emitters = new ConcurrentHashMap<>();
+    // Writes to slow sockets must not hold up the committing request thread
+    private final ExecutorService pushExecutor;
+    // Tail of each emitter's write queue, present while writes are queued or running
+    private final Map<SseEmitter, CompletableFuture<Void>> lanes = new ConcurrentHashMap<>();
+    // When the write now running on each emitter started
+    private final Map<SseEmitter, Long> writingSince = new ConcurrentHashMap<>();
+
+    @Value("${mailbox.stream.max-per-user:4}")
+    private int maxPerUser;
+
+    @Value("${mailbox.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${mailbox.stream.send-timeout-ms:30000}")
+    private long sendTimeoutMs;
+
+    public MailboxStreamService(
+            UserRepository userRepository,
+            @Value("${mailbox.stream.push-threads:4}") int pushThreads
+    ) {
+        this.userRepository = userRepository;
+        AtomicInteger threadIds = new AtomicInteger();
+        this.pushExecutor = Executors.newFixedThreadPool(pushThreads, r -> {
+            Thread t = new Thread(r, "mailbox-push-" + threadIds.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Published by EmailService.sendEmail; delivered only once the message is committed.
+     */
+    public record NewMail(Long recipientId, NewMailNotice notice) {
+    }
+
+    public SseEmitter open(String username) {
+        User user = userRepository.findByUsername(username).orElseThrow();
+        Long userId = user.getId();
+
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        emitter.onCompletion(() -> remove(userId, emitter));
+        emitter.onTimeout(() -> remove(userId, emitter));
+        emitter.onError(e -> remove(userId, emitter));
+
+        List<SseEmitter> evicted = new ArrayList<>();
+        emitters.compute(userId, (id, list) -> {
+            if (list == null) {
+                list = new CopyOnWriteArrayList<>();
+            }
+            while (list.size() >= maxPerUser) {
+                evicted.add(list.remove(0));
+            }
+            list.add(emitter);
+            return list;
+        });
+        evicted.forEach(SseEmitter::complete);
+
+        try {
+            emitter.send(SseEmitter.event().comment("connected"));
+        } catch (Exception e) {
+            remove(userId, emitter);
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    public boolean isConnected(Long userId) {
+        return emitters.containsKey(userId);
+    }
+
+    @TransactionalEventListener
+    public void onNewMail(NewMail event) {
+        List<SseEmitter> list = emitters.get(event.recipientId());
+        if (list == null) return;
+        for (SseEmitter emitter : list) {
+            enqueue(event.recipientId(), emitter, SseEmitter.event().name("new-mail").data(event.notice()));
+        }
+    }
+
+    // Runs on the shared @Scheduled thread, so it only queues writes and never blocks on a socket
+    @Scheduled(fixedRateString = "${mailbox.stream.heartbeat-ms:25000}")
+    public void heartbeat() {
+        long now = System.currentTimeMillis();
+        emitters.forEach((userId, list) -> {
+            for (SseEmitter emitter : list) {
+                Long since = writingSince.get(emitter);
+                if (since != null && now - since > sendTimeoutMs) {
+                    drop(userId, emitter, new IOException("Write blocked for " + (now - since) + " ms"));
+                } else if (!lanes.containsKey(emitter)) {
+                    enqueue(userId, emitter, SseEmitter.event().comment("hb"));
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pushExecutor.shutdownNow();
+        emitters.values().forEach(list -> list.forEach(SseEmitter::complete));
+        emitters.clear();
+    }
+
+    /**
+     * Queue a write behind the emitter's earlier ones, so events reach each client in order.
+     */
+    private void enqueue(Long userId, SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        CompletableFuture<Void> tail = lanes.compute(emitter, (e, previous) ->
+                (previous != null ? previous : CompletableFuture.<Void>completedFuture(null))
+                        .thenRunAsync(() -> trySend(userId, emitter, event), pushExecutor));
+        tail.whenComplete((result, error) -> lanes.remove(emitter, tail));
+    }
+
+    private void trySend(Long userId, SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        writingSince.put(emitter, System.currentTimeMillis());
+        try {
+            emitter.send(event);
+        } catch (Exception e) {
+            // Client went away; drop the emitter instead of waiting for the timeout
+            drop(userId, emitter, e);
+        } finally {
+            writingSince.remove(emitter);
+        }
+    }
+
+    private void drop(Long userId, SseEmitter emitter, Exception cause) {
+        logger.debug("Dropping mailbox stream for user {}: {}", userId, cause.getMessage());
+        remove(userId, emitter);
+        emitter.completeWithError(cause);
+    }
+
+    private void remove(Long userId, SseEmitter emitter) {
+        emitters.computeIfPresent(userId, (id, list) -> {
+            list.remove(emitter);
+            return list.isEmpty() ? null : list;
+        });
+    }
+}
@@ -0,0 +1,98 @@
+package com.cryptamail.service;
+
+import com.cryptamail.dto.PublicKeyResponse;
+import com.cryptamail.repository.UserRepository;
+import com.cryptamail.util.BoundedCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * Cached recipient public key lookups for GET /api/users/public-key.
+ *
+ * Keys are loaded through a projection that skips the private key columns and kept
+ * in a bounded TTL cache keyed by normalized username. Unknown usernames are cached
+ * too, for a shorter time, so probing for addresses does not reach the database.
+ * Registration, renames and account deletion must call {@link #evict(String)}.
+ */
+@Service
+public class PublicKeyDirectory {
+
+    private final UserRepository userRepository;
+    private final BoundedCache<String, PublicKeyResponse> keys;
+    private final BoundedCache<String, Boolean> misses;
+
+    public PublicKeyDirectory(
+            UserRepository userRepository,
+            @Value("${mailbox.public-keys.cache-size:10000}") int cacheSize,
+            @Value("${mailbox.public-keys.ttl-seconds:600}") long ttlSeconds,
+            @Value("${mailbox.public-keys.negative-ttl-seconds:30}") long negativeTtlSeconds
+    ) {
+        this.userRepository = userRepository;
+        this.keys = new BoundedCache<>(cacheSize, Duration.ofSeconds(ttlSeconds));
+        this.misses = new BoundedCache<>(cacheSize, Duration.ofSeconds(negativeTtlSeconds));
+    }
+
+    /**
+     * @param username already lowercased and trimmed
+     * @return the user's public key, or empty if there is no such user
+     */
+    public Optional<PublicKeyResponse> lookup(String username) {
+        PublicKeyResponse cached = keys.get(username);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        if (misses.get(username) != null) {
+            return Optional.empty();
+        }
+
+        Optional<PublicKeyResponse> loaded = userRepository.findPublicKeyByUsername(username)
+                .map(view -> new PublicKeyResponse(
+                        view.getUsername(),
+                        view.getUsername() + "@smail.in",
+                        view.getPublicKey(),
+                        etagOf(view.getPublicKey())));
+        if (loaded.isPresent()) {
+            keys.put(username, loaded.get());
+        } else {
+            misses.put(username, Boolean.TRUE);
+        }
+        return loaded;
+    }
+
+    /**
+     * Drop a username now and again once the surrounding transaction commits, so a
+     * lookup racing with the change cannot re-cache what it replaces.
+     */
+    public void evict(String username) {
+        keys.invalidate(username);
+        misses.invalidate(username);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    keys.invalidate(username);
+                    misses.invalidate(username);
+                }
+            });
+        }
+    }
+
+    private static String etagOf(String publicKey) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(String.valueOf(publicKey).getBytes(StandardCharsets.UTF_8));
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
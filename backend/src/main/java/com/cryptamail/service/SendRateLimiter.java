@@ -0,0 +1,151 @@
+package com.cryptamail.service;
+
+import com.cryptamail.util.SlidingWindowLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory send quotas checked before EmailService.sendEmail touches the database:
+ * one sliding hour per (sender, recipient) pair and one per sender.
+ *
+ * With mailbox.rate-limit.reject=true an exceeded quota fails the send with 429;
+ * otherwise the message is delivered but flagged as spam. The limiter is not part
+ * of the database transaction, so quota taken inside one is handed back if it rolls
+ * back: only committed sends count.
+ */
+@Service
+public class SendRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(SendRateLimiter.class);
+    private static final Duration WINDOW = Duration.ofHours(1);
+    private static final int BUCKETS = 12;
+
+    private final SlidingWindowLimiter<PairKey> perPair;
+    private final SlidingWindowLimiter<Long> perSender;
+    private final boolean enabled;
+    private final boolean reject;
+
+    public SendRateLimiter(
+            @Value("${mailbox.rate-limit.enabled:true}") boolean enabled,
+            @Value("${mailbox.rate-limit.reject:true}") boolean reject,
+            @Value("${mailbox.rate-limit.per-recipient-per-hour:30}") int perRecipientPerHour,
+            @Value("${mailbox.rate-limit.per-sender-per-hour:300}") int perSenderPerHour
+    ) {
+        this.enabled = enabled;
+        this.reject = reject;
+        this.perPair = new SlidingWindowLimiter<>(perRecipientPerHour, WINDOW, BUCKETS);
+        this.perSender = new SlidingWindowLimiter<>(perSenderPerHour, WINDOW, BUCKETS);
+    }
+
+    private record PairKey(Long senderId, Long recipientId) {
+    }
+
+    /**
+     * Count a send against both quotas.
+     *
+     * @return true if the send is within quota, false if it should be flagged as spam
+     * @throws ResponseStatusException 429 if over quota and rejection is enabled
+     */
+    public boolean acquire(Long senderId, Long recipientId) {
+        if (!enabled) return true;
+
+        long now = System.currentTimeMillis();
+        PairKey pair = new PairKey(senderId, recipientId);
+        boolean allowed = take(pair, now);
+        if (allowed) {
+            refundOnRollback(List.of(pair), now);
+        } else if (reject) {
+            throw tooManyRequests();
+        }
+        return allowed;
+    }
+
+    /**
+     * Count one send to each recipient against both quotas. With rejection enabled
+     * this is all or nothing: if any recipient is over quota, whatever was taken for
+     * the others is handed back at once and the whole send fails with 429.
+     *
+     * @return recipient id -> within quota
+     */
+    public Map<Long, Boolean> acquireAll(Long senderId, Collection<Long> recipientIds) {
+        Map<Long, Boolean> allowed = new HashMap<>();
+        if (!enabled) {
+            recipientIds.forEach(id -> allowed.put(id, true));
+            return allowed;
+        }
+
+        long now = System.currentTimeMillis();
+        List<PairKey> taken = new ArrayList<>();
+        for (Long recipientId : recipientIds) {
+            PairKey pair = new PairKey(senderId, recipientId);
+            boolean within = take(pair, now);
+            if (within) {
+                taken.add(pair);
+            } else if (reject) {
+                release(taken, now);
+                throw tooManyRequests();
+            }
+            allowed.put(recipientId, within);
+        }
+        refundOnRollback(taken, now);
+        return allowed;
+    }
+
+    private boolean take(PairKey pair, long now) {
+        if (!perPair.tryAcquire(pair, now)) {
+            return false;
+        }
+        if (!perSender.tryAcquire(pair.senderId(), now)) {
+            perPair.release(pair, now);
+            return false;
+        }
+        return true;
+    }
+
+    private void release(List<PairKey> pairs, long acquiredAt) {
+        for (PairKey pair : pairs) {
+            perPair.release(pair, acquiredAt);
+            perSender.release(pair.senderId(), acquiredAt);
+        }
+    }
+
+    private void refundOnRollback(List<PairKey> pairs, long acquiredAt) {
+        if (pairs.isEmpty() || !TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    release(pairs, acquiredAt);
+                }
+            }
+        });
+    }
+
+    private ResponseStatusException tooManyRequests() {
+        return new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                "Sending limit reached, please try again later");
+    }
+
+    @Scheduled(fixedRate = 300000)
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        int evicted = perPair.evictIdle(now) + perSender.evictIdle(now);
+        if (evicted > 0) {
+            logger.debug("Evicted {} idle rate limiter keys", evicted);
+        }
+    }
+}
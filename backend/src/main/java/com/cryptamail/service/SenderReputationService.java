@@ -0,0 +1,72 @@
+package com.cryptamail.service;
+
+import com.cryptamail.model.SenderContact;
+import com.cryptamail.repository.SenderContactRepository;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+/**
+ * Feeds the spam rules in EmailService.sendEmail from the sender_contacts row of
+ * the pair, so a send costs one locked single-row read and one write regardless
+ * of how many messages either user has.
+ *
+ * The row of a new pair is created in its own transaction before it is locked, so
+ * concurrent first sends between the same users serialize on it instead of both
+ * inserting and failing one send on the primary key.
+ */
+@Service
+public class SenderReputationService {
+
+    private final SenderContactRepository contactRepository;
+    private final TransactionTemplate createTx;
+
+    public SenderReputationService(SenderContactRepository contactRepository,
+                                   PlatformTransactionManager transactionManager) {
+        this.contactRepository = contactRepository;
+        this.createTx = new TransactionTemplate(transactionManager);
+        this.createTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * What was known about the pair before this send.
+     */
+    public record Reputation(boolean firstContact, double recentSends) {
+    }
+
+    /**
+     * Register a send from senderId to recipientId and return the reputation it is judged by.
+     */
+    @Transactional
+    public Reputation recordSend(Long senderId, Long recipientId, LocalDateTime now) {
+        SenderContact contact = contactRepository.findForUpdate(senderId, recipientId).orElse(null);
+        if (contact == null) {
+            create(senderId, recipientId, now);
+            contact = contactRepository.findForUpdate(senderId, recipientId).orElseThrow();
+        }
+
+        boolean firstContact = !contact.hasSends();
+        double recentSends = firstContact ? 0 : contact.recentSends(now);
+        contact.recordSend(now);
+        contactRepository.save(contact);
+        return new Reputation(firstContact, recentSends);
+    }
+
+    private void create(Long senderId, Long recipientId, LocalDateTime now) {
+        try {
+            createTx.executeWithoutResult(status -> contactRepository.insert(senderId, recipientId, now));
+        } catch (DataIntegrityViolationException created) {
+            // A concurrent send created it first; its row is committed by now
+        }
+    }
+
+    @Transactional
+    public void delete(Long userId) {
+        contactRepository.deleteByUserId(userId);
+    }
+}
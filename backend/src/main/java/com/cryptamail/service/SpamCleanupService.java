@@ -1,6 +1,7 @@
 package com.cryptamail.service;
 
 import com.cryptamail.model.EmailMessage;
+import com.cryptamail.model.MailboxChangeType;
 import com.cryptamail.repository.EmailRepository;
 import com.cryptamail.repository.UserRepository;
 import org.slf4j.Logger;
@@ -19,10 +20,15 @@ public class SpamCleanupService {
     
     private final EmailRepository emailRepository;
     private final AttachmentService attachmentService;
+    private final MailboxCounterService counterService;
+    private final MailboxChangeLog changeLog;
 
-    public SpamCleanupService(EmailRepository emailRepository, AttachmentService attachmentService) {
+    public SpamCleanupService(EmailRepository emailRepository, AttachmentService attachmentService,
+                              MailboxCounterService counterService, MailboxChangeLog changeLog) {
         this.emailRepository = emailRepository;
         this.attachmentService = attachmentService;
+        this.counterService = counterService;
+        this.changeLog = changeLog;
     }
 
     @Scheduled(cron = "0 0 3 * * ?")
@@ -68,6 +74,8 @@ public class SpamCleanupService {
                 
                 // Hard delete the email
                 emailRepository.delete(email);
+                counterService.apply(MailboxCounterService.Snapshot.of(email), null);
+                changeLog.recordForParticipants(email, MailboxChangeType.REMOVE);
                 deletedCount++;
                 
             } catch (Exception e) {
@@ -0,0 +1,102 @@
+package com.cryptamail.service;
+
+import com.cryptamail.repository.UserRepository;
+import com.cryptamail.util.BoundedCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves user ids to usernames for mailbox DTO mapping, and usernames to ids
+ * for hot paths that only need the caller's id.
+ *
+ * All ids on a page are resolved together: cache hits are served from a bounded
+ * id -> username cache and the misses are loaded with a single IN query.
+ * Renames and account deletion must call {@link #evict(Long, String)} so stale
+ * entries are not served.
+ */
+@Service
+public class UserDirectory {
+
+    public static final String UNKNOWN_USERNAME = "unknown";
+
+    private final UserRepository userRepository;
+    private final BoundedCache<Long, String> usernames;
+    private final BoundedCache<String, Long> ids;
+
+    public UserDirectory(
+            UserRepository userRepository,
+            @Value("${mailbox.user-directory.cache-size:10000}") int cacheSize
+    ) {
+        this.userRepository = userRepository;
+        this.usernames = new BoundedCache<>(cacheSize);
+        this.ids = new BoundedCache<>(cacheSize);
+    }
+
+    /**
+     * @return id -> username for every id that exists; unknown ids are omitted
+     */
+    public Map<Long, String> usernamesFor(Collection<Long> userIds) {
+        Map<Long, String> resolved = new HashMap<>();
+        Set<Long> misses = new HashSet<>();
+
+        for (Long id : userIds) {
+            if (id == null || resolved.containsKey(id)) continue;
+            String cached = usernames.get(id);
+            if (cached != null) {
+                resolved.put(id, cached);
+            } else {
+                misses.add(id);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            for (UserRepository.UsernameView view : userRepository.findUsernamesByIdIn(misses)) {
+                usernames.put(view.getId(), view.getUsername());
+                resolved.put(view.getId(), view.getUsername());
+            }
+        }
+        return resolved;
+    }
+
+    public String usernameOf(Long userId) {
+        return usernamesFor(Set.of(userId)).getOrDefault(userId, UNKNOWN_USERNAME);
+    }
+
+    /**
+     * @throws java.util.NoSuchElementException if there is no such user
+     */
+    public Long idOf(String username) {
+        Long id = ids.get(username);
+        if (id == null) {
+            id = userRepository.findByUsername(username).orElseThrow().getId();
+            ids.put(username, id);
+        }
+        return id;
+    }
+
+    /**
+     * Drop a user now and again once the surrounding transaction commits, so a
+     * lookup racing with the rename cannot re-cache the old name.
+     */
+    public void evict(Long userId, String username) {
+        usernames.invalidate(userId);
+        ids.invalidate(username);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    usernames.invalidate(userId);
+                    ids.invalidate(username);
+                }
+            });
+        }
+    }
+}
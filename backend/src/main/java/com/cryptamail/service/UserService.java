@@ -2,6 +2,8 @@ package com.cryptamail.service;
 
 import com.cryptamail.dto.PublicKeyResponse;
 import com.cryptamail.dto.StorageUsageResponse;
+import com.cryptamail.model.Attachment;
+import com.cryptamail.model.MailboxChangeType;
 import com.cryptamail.model.User;
 import com.cryptamail.repository.UserRepository;
 import com.cryptamail.repository.EmailRepository;
@@ -12,6 +14,11 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @Service
 public class UserService {
     
@@ -32,20 +39,32 @@ public class UserService {
     @Autowired
     private PasswordEncoder passwordEncoder;
     
+    @Autowired
+    private MailboxCounterService mailboxCounterService;
+
+    @Autowired
+    private MailboxChangeLog mailboxChangeLog;
+
+    @Autowired
+    private UserDirectory userDirectory;
+
+    @Autowired
+    private SenderReputationService senderReputationService;
+
+    @Autowired
+    private PublicKeyDirectory publicKeyDirectory;
+
+    @Autowired
+    private ChunkStorage chunkStorage;
+    
     /**
      * Get user's public key by username
      */
     public PublicKeyResponse getPublicKeyByUsername(String username) {
         final String normalizedUsername = username.toLowerCase().trim();
         
-        User user = userRepository.findByUsername(normalizedUsername)
+        return publicKeyDirectory.lookup(normalizedUsername)
                 .orElseThrow(() -> new RuntimeException("User not found: " + normalizedUsername));
-        
-        return new PublicKeyResponse(
-                user.getUsername(),
-                user.getAddress(),
-                user.getPublicKey()
-        );
     }
     
     /**
@@ -150,18 +169,35 @@ public class UserService {
         // Delete emails where user is sender or recipient
         var emails = emailRepository.findAllBySenderIdOrRecipientId(user.getId(), user.getId());
         emailRepository.deleteAll(emails);
+
+        // Tell counterparties' clients the messages are gone
+        Map<Long, List<Long>> removedByCounterparty = new HashMap<>();
+        for (var email : emails) {
+            Long other = email.getSenderId().equals(user.getId()) ? email.getRecipientId() : email.getSenderId();
+            if (!other.equals(user.getId())) {
+                removedByCounterparty.computeIfAbsent(other, k -> new ArrayList<>()).add(email.getId());
+            }
+        }
+        removedByCounterparty.forEach((userId, emailIds) ->
+                mailboxChangeLog.record(userId, emailIds, MailboxChangeType.REMOVE));
         
         // Delete attachments uploaded by user
         var attachments = attachmentRepository.findByUploaderId(user.getId());
-        for (var attachment : attachments) {
-            if (attachment != null) {
-                // Delete attachment chunks first
-                var chunks = attachmentChunkRepository.findByAttachmentId(attachment.getId());
-                attachmentChunkRepository.deleteAll(chunks);
-            }
+        List<Long> attachmentIds = attachments.stream().map(Attachment::getId).toList();
+        if (!attachmentIds.isEmpty()) {
+            // Delete attachment chunks first
+            attachmentChunkRepository.deleteByAttachmentIdIn(attachmentIds);
+            chunkStorage.deleteAll(attachmentIds);
         }
         attachmentRepository.deleteAll(attachments);
         
+        // Counterparties' counters are repaired by the nightly reconciliation
+        mailboxCounterService.delete(user.getId());
+        mailboxChangeLog.delete(user.getId());
+        senderReputationService.delete(user.getId());
+        userDirectory.evict(user.getId(), user.getUsername());
+        publicKeyDirectory.evict(user.getUsername());
+        
         // Finally, delete the user
         userRepository.delete(user);
     }
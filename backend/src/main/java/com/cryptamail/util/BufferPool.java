@@ -0,0 +1,60 @@
+package com.cryptamail.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed-size direct byte buffers reused across requests.
+ *
+ * At most maxPooled direct buffers are ever allocated, so the pool's direct memory
+ * is bounded by maxPooled * bufferSize. When all of them are in use, acquire hands
+ * out a heap buffer instead of blocking; heap buffers are not pooled. Direct
+ * buffers let channel reads and writes skip the JDK's temporary copy.
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ArrayBlockingQueue<ByteBuffer> idle;
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0 || maxPooled <= 0) {
+            throw new IllegalArgumentException("bufferSize and maxPooled must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.idle = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * @return a cleared buffer of bufferSize bytes, direct unless the pool is exhausted;
+     *         hand it back with {@link #release(ByteBuffer)}
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = idle.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        int count = allocated.get();
+        while (count < maxPooled) {
+            if (allocated.compareAndSet(count, count + 1)) {
+                return ByteBuffer.allocateDirect(bufferSize);
+            }
+            count = allocated.get();
+        }
+        return ByteBuffer.allocate(bufferSize);
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() != bufferSize) return;
+        buffer.clear();
+        // Never full: only the maxPooled buffers this pool allocated are offered back
+        idle.offer(buffer);
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+}
@@ -0,0 +1,88 @@
+package com.cryptamail.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One bit per chunk index, stored as a byte array (bit i is bit i%8 of byte i/8).
+ *
+ * Small enough to live on the attachment row: the default cap of 65536 chunks is 8KB.
+ */
+public final class ChunkBitmap {
+
+    private final byte[] bits;
+    private final int size;
+
+    private ChunkBitmap(byte[] bits, int size) {
+        this.bits = bits;
+        this.size = size;
+    }
+
+    public static ChunkBitmap empty(int size) {
+        return new ChunkBitmap(new byte[(size + 7) / 8], size);
+    }
+
+    /**
+     * Wrap a stored bitmap; the bytes are copied so the caller's array is never mutated.
+     */
+    public static ChunkBitmap of(byte[] bits, int size) {
+        byte[] copy = Arrays.copyOf(bits, (size + 7) / 8);
+        return new ChunkBitmap(copy, size);
+    }
+
+    public boolean isSet(int index) {
+        checkIndex(index);
+        return (bits[index >>> 3] & (1 << (index & 7))) != 0;
+    }
+
+    /**
+     * @return true if the bit was not set before
+     */
+    public boolean set(int index) {
+        checkIndex(index);
+        int mask = 1 << (index & 7);
+        if ((bits[index >>> 3] & mask) != 0) return false;
+        bits[index >>> 3] |= (byte) mask;
+        return true;
+    }
+
+    public List<Integer> setIndexes() {
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (isSet(i)) indexes.add(i);
+        }
+        return indexes;
+    }
+
+    /**
+     * @return inclusive [from, to] runs of unset indexes, in order
+     */
+    public List<int[]> missingRanges() {
+        List<int[]> ranges = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < size; i++) {
+            boolean missing = !isSet(i);
+            if (missing && start < 0) {
+                start = i;
+            } else if (!missing && start >= 0) {
+                ranges.add(new int[] {start, i - 1});
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            ranges.add(new int[] {start, size - 1});
+        }
+        return ranges;
+    }
+
+    public byte[] toBytes() {
+        return bits.clone();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Chunk index " + index + " outside 0.." + (size - 1));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.cryptamail.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Opaque keyset cursor over (timestamp, id) for mailbox folder pages.
+ *
+ * Folder queries are ordered by timestamp DESC, id DESC, so the cursor marks
+ * the last row of the previous page and the next page starts strictly after it.
+ */
+public final class MailboxCursor {
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 200;
+
+    /**
+     * Sentinel used for the first page so every folder needs only one query.
+     * Later than any stored timestamp, and still a valid TIMESTAMP on H2 and PostgreSQL.
+     */
+    public static final MailboxCursor START =
+            new MailboxCursor(LocalDateTime.of(9999, 12, 31, 23, 59, 59), Long.MAX_VALUE);
+
+    private static final String SEPARATOR = "|";
+
+    private final LocalDateTime timestamp;
+    private final Long id;
+
+    public MailboxCursor(LocalDateTime timestamp, Long id) {
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * Decode a cursor sent by the client. A missing cursor means "first page".
+     */
+    public static MailboxCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return START;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+            int sep = raw.lastIndexOf(SEPARATOR);
+            if (sep <= 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            LocalDateTime timestamp = LocalDateTime.parse(raw.substring(0, sep));
+            Long id = Long.parseLong(raw.substring(sep + 1));
+            return new MailboxCursor(timestamp, id);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    public String encode() {
+        String raw = timestamp + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Clamp a client supplied page size into [1, MAX_LIMIT].
+     */
+    public static int normalizeLimit(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return DEFAULT_LIMIT;
+        }
+        return Math.min(limit, MAX_LIMIT);
+    }
+}
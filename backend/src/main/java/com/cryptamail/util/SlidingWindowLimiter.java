@@ -0,0 +1,131 @@
+package com.cryptamail.util;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory sliding-window rate limiter keyed by K.
+ *
+ * Each key owns a ring of fixed time buckets covering the window. A bucket is one
+ * long packing the bucket number (high bits) and its count (low COUNT_BITS), so
+ * rolling a stale bucket over and counting into it is a single CAS; no locks are
+ * taken on the hot path. A call counts itself first and backs out if the window is
+ * then over the limit, so concurrent callers can never exceed it together.
+ *
+ * Keys idle for a whole window hold no information and are dropped by {@link #evictIdle(long)}.
+ */
+public class SlidingWindowLimiter<K> {
+
+    private static final int COUNT_BITS = 24;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final int limit;
+    private final int buckets;
+    private final long bucketMillis;
+    private final ConcurrentHashMap<K, Window> windows = new ConcurrentHashMap<>();
+
+    public SlidingWindowLimiter(int limit, Duration window, int buckets) {
+        if (limit <= 0 || buckets <= 0 || window.toMillis() < buckets) {
+            throw new IllegalArgumentException("Invalid rate limiter configuration");
+        }
+        this.limit = limit;
+        this.buckets = buckets;
+        this.bucketMillis = window.toMillis() / buckets;
+    }
+
+    /**
+     * Count one event for key if that keeps it within the limit.
+     *
+     * @return false if the key is already at its limit for the trailing window
+     */
+    public boolean tryAcquire(K key, long nowMillis) {
+        long bucket = nowMillis / bucketMillis;
+        Window w = windows.computeIfAbsent(key, k -> new Window(buckets));
+        w.lastUsed = nowMillis;
+
+        w.add(bucket, 1);
+        if (w.sum(bucket) > limit) {
+            w.add(bucket, -1);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Undo one acquired event, e.g. when the guarded operation was rejected for another
+     * reason or rolled back. The event is taken out of the bucket it was counted in; if
+     * that bucket has since rolled out of the window there is nothing left to undo.
+     *
+     * @param acquiredAtMillis the nowMillis passed to the matching {@link #tryAcquire}
+     */
+    public void release(K key, long acquiredAtMillis) {
+        Window w = windows.get(key);
+        if (w != null) {
+            w.remove(acquiredAtMillis / bucketMillis);
+        }
+    }
+
+    /**
+     * Drop keys with no events in the last full window.
+     *
+     * @return number of keys removed
+     */
+    public int evictIdle(long nowMillis) {
+        long idleBefore = nowMillis - bucketMillis * buckets;
+        int before = windows.size();
+        windows.values().removeIf(w -> w.lastUsed < idleBefore);
+        return before - windows.size();
+    }
+
+    public int size() {
+        return windows.size();
+    }
+
+    private final class Window {
+        private final AtomicLongArray slots;
+        private volatile long lastUsed;
+
+        private Window(int buckets) {
+            this.slots = new AtomicLongArray(buckets);
+        }
+
+        private void add(long bucket, int delta) {
+            int i = (int) (bucket % buckets);
+            while (true) {
+                long current = slots.get(i);
+                long count = (current >>> COUNT_BITS) == bucket ? current & COUNT_MASK : 0;
+                long next = (bucket << COUNT_BITS) | Math.max(0, Math.min(COUNT_MASK, count + delta));
+                if (slots.compareAndSet(i, current, next)) {
+                    return;
+                }
+            }
+        }
+
+        private void remove(long bucket) {
+            int i = (int) (bucket % buckets);
+            while (true) {
+                long current = slots.get(i);
+                long count = current & COUNT_MASK;
+                if ((current >>> COUNT_BITS) != bucket || count == 0) {
+                    return;
+                }
+                if (slots.compareAndSet(i, current, (bucket << COUNT_BITS) | (count - 1))) {
+                    return;
+                }
+            }
+        }
+
+        private long sum(long bucket) {
+            long total = 0;
+            for (int i = 0; i < buckets; i++) {
+                long value = slots.get(i);
+                long age = bucket - (value >>> COUNT_BITS);
+                if (age >= 0 && age < buckets) {
+                    total += value & COUNT_MASK;
+                }
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,3 @@
+-- findDraftsPage / streamDrafts: sender_id = ? AND is_draft = TRUE AND deleted_by_sender = FALSE
+-- has the same shape as findSentPage, so idx_email_sent serves both and idx_email_drafts goes
+DROP INDEX IF EXISTS idx_email_drafts;
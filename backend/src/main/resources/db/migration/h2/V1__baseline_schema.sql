@@ -0,0 +1,104 @@
+-- Baseline schema, matching what spring.jpa.hibernate.ddl-auto=update used to create.
+-- Existing databases are baselined at this version (spring.flyway.baseline-on-migrate).
+
+CREATE TABLE IF NOT EXISTS users (
+    id                               BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    username                         VARCHAR(255)  NOT NULL,
+    password_hash                    VARCHAR(255)  NOT NULL,
+    public_key                       CLOB          NOT NULL,
+    encrypted_private_key_ciphertext CLOB          NOT NULL,
+    encrypted_private_key_iv         VARCHAR(512)  NOT NULL,
+    encrypted_private_key_salt       VARCHAR(512)  NOT NULL,
+    kdf_iterations                   INTEGER       NOT NULL,
+    storage_quota                    BIGINT,
+    storage_used                     BIGINT,
+    email                            VARCHAR(255),
+    password                         VARCHAR(255),
+    google_id                        VARCHAR(255),
+    name                             VARCHAR(255),
+    google_user                      BOOLEAN       NOT NULL,
+    CONSTRAINT uk_users_username UNIQUE (username),
+    CONSTRAINT uk_users_email UNIQUE (email)
+);
+
+CREATE TABLE IF NOT EXISTS user_roles (
+    user_id BIGINT       NOT NULL,
+    roles   VARCHAR(255),
+    CONSTRAINT fk_user_roles_user FOREIGN KEY (user_id) REFERENCES users (id)
+);
+
+CREATE TABLE IF NOT EXISTS attachments (
+    id                      BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    status                  VARCHAR(32)   NOT NULL,
+    total_size              BIGINT        NOT NULL,
+    total_chunks            INTEGER       NOT NULL,
+    quota_reserved          BOOLEAN       NOT NULL,
+    encrypted_filename      VARCHAR(4096),
+    filename_iv             VARCHAR(512),
+    encrypted_key_sender    VARCHAR(1024),
+    encrypted_key_recipient VARCHAR(1024),
+    mime_type               VARCHAR(255)  NOT NULL,
+    uploader_id             BIGINT        NOT NULL,
+    deleted                 BOOLEAN       NOT NULL,
+    created_at              TIMESTAMP(6)  NOT NULL,
+    CONSTRAINT fk_attachments_uploader FOREIGN KEY (uploader_id) REFERENCES users (id)
+);
+
+CREATE TABLE IF NOT EXISTS attachment_chunks (
+    id             BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    attachment_id  BIGINT        NOT NULL,
+    chunk_index    INTEGER       NOT NULL,
+    encrypted_data BLOB          NOT NULL,
+    iv             VARCHAR(255)  NOT NULL,
+    size           BIGINT        NOT NULL,
+    CONSTRAINT fk_attachment_chunks_attachment FOREIGN KEY (attachment_id) REFERENCES attachments (id)
+);
+
+CREATE TABLE IF NOT EXISTS cloud_files (
+    id                BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    original_filename VARCHAR(255)  NOT NULL,
+    storage_key       VARCHAR(255)  NOT NULL,
+    storage_provider  VARCHAR(255)  NOT NULL,
+    file_size         BIGINT        NOT NULL,
+    mime_type         VARCHAR(255)  NOT NULL,
+    uploader_id       BIGINT        NOT NULL,
+    download_url      VARCHAR(255),
+    expires_at        TIMESTAMP(6),
+    created_at        TIMESTAMP(6)  NOT NULL,
+    is_deleted        BOOLEAN       NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS email_messages (
+    id                               BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    sender_id                        BIGINT        NOT NULL,
+    recipient_id                     BIGINT        NOT NULL,
+    encrypted_subject                VARCHAR(4096) NOT NULL,
+    subject_iv                       VARCHAR(256)  NOT NULL,
+    encrypted_body                   CLOB          NOT NULL,
+    body_iv                          VARCHAR(256)  NOT NULL,
+    encrypted_symmetric_key          VARCHAR(1024) NOT NULL,
+    sender_encrypted_symmetric_key   VARCHAR(1024) NOT NULL,
+    timestamp                        TIMESTAMP(6)  NOT NULL,
+    is_read                          BOOLEAN       NOT NULL,
+    is_draft                         BOOLEAN       NOT NULL,
+    deleted_by_sender                BOOLEAN       NOT NULL,
+    deleted_by_recipient             BOOLEAN       NOT NULL,
+    permanently_deleted_by_sender    BOOLEAN       NOT NULL,
+    permanently_deleted_by_recipient BOOLEAN       NOT NULL,
+    is_spam                          BOOLEAN       NOT NULL,
+    spam_marked_at                   TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS email_attachments (
+    email_id      BIGINT NOT NULL,
+    attachment_id BIGINT NOT NULL,
+    CONSTRAINT fk_email_attachments_email FOREIGN KEY (email_id) REFERENCES email_messages (id),
+    CONSTRAINT fk_email_attachments_attachment FOREIGN KEY (attachment_id) REFERENCES attachments (id)
+);
+
+CREATE TABLE IF NOT EXISTS email_cloud_files (
+    email_id      BIGINT NOT NULL,
+    cloud_file_id BIGINT NOT NULL,
+    CONSTRAINT fk_email_cloud_files_email FOREIGN KEY (email_id) REFERENCES email_messages (id),
+    CONSTRAINT fk_email_cloud_files_cloud_file FOREIGN KEY (cloud_file_id) REFERENCES cloud_files (id)
+);
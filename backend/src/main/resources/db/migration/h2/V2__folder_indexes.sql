@@ -0,0 +1,37 @@
+-- Composite indexes for the EmailRepository folder queries.
+-- Each one leads with the owner column and the folder flags, then (timestamp, id)
+-- in the ORDER BY direction, so keyset pages are an index range scan with no sort.
+
+-- findInboxPage: recipient_id = ? AND is_draft = FALSE AND deleted_by_recipient = FALSE
+CREATE INDEX IF NOT EXISTS idx_email_inbox
+    ON email_messages (recipient_id, is_draft, deleted_by_recipient, timestamp DESC, id DESC);
+
+-- findSentPage: sender_id = ? AND is_draft = FALSE AND deleted_by_sender = FALSE
+CREATE INDEX IF NOT EXISTS idx_email_sent
+    ON email_messages (sender_id, is_draft, deleted_by_sender, timestamp DESC, id DESC);
+
+-- findDraftsPage: sender_id = ? AND is_draft = TRUE
+CREATE INDEX IF NOT EXISTS idx_email_drafts
+    ON email_messages (sender_id, is_draft, timestamp DESC, id DESC);
+
+-- findSpamPage: recipient_id = ? AND is_spam = TRUE AND deleted_by_recipient = FALSE
+CREATE INDEX IF NOT EXISTS idx_email_spam
+    ON email_messages (recipient_id, is_spam, deleted_by_recipient, timestamp DESC, id DESC);
+
+-- findTrashPage / findTrash: one index per side of the OR
+CREATE INDEX IF NOT EXISTS idx_email_trash_sender
+    ON email_messages (sender_id, deleted_by_sender, permanently_deleted_by_sender, timestamp DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_email_trash_recipient
+    ON email_messages (recipient_id, deleted_by_recipient, permanently_deleted_by_recipient, timestamp DESC, id DESC);
+
+-- findSpamOlderThan: is_spam = TRUE AND spam_marked_at < ?
+CREATE INDEX IF NOT EXISTS idx_email_spam_marked_at
+    ON email_messages (is_spam, spam_marked_at);
+
+-- Chunk lookups by (attachment, index); also makes chunk uploads idempotent at the database level
+CREATE UNIQUE INDEX IF NOT EXISTS uk_attachment_chunks_attachment_index
+    ON attachment_chunks (attachment_id, chunk_index);
+
+-- findByUploaderIdAndIsDeletedFalse / findActiveFilesByUploader
+CREATE INDEX IF NOT EXISTS idx_cloud_files_uploader_deleted
+    ON cloud_files (uploader_id, is_deleted);
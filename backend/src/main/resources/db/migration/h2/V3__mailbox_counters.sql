@@ -0,0 +1,25 @@
+-- Materialized per-user folder counters (see MailboxCounterService)
+
+CREATE TABLE IF NOT EXISTS mailbox_counters (
+    user_id     BIGINT NOT NULL PRIMARY KEY,
+    inbox_total BIGINT NOT NULL,
+    unread      BIGINT NOT NULL,
+    spam        BIGINT NOT NULL,
+    trash       BIGINT NOT NULL
+);
+
+-- Backfill existing users with the same predicates as the folder queries
+INSERT INTO mailbox_counters (user_id, inbox_total, unread, spam, trash)
+SELECT u.id,
+       (SELECT COUNT(*) FROM email_messages e
+         WHERE e.recipient_id = u.id AND e.is_draft = FALSE AND e.deleted_by_recipient = FALSE),
+       (SELECT COUNT(*) FROM email_messages e
+         WHERE e.recipient_id = u.id AND e.is_draft = FALSE AND e.deleted_by_recipient = FALSE
+           AND e.is_read = FALSE),
+       (SELECT COUNT(*) FROM email_messages e
+         WHERE e.recipient_id = u.id AND e.is_spam = TRUE AND e.deleted_by_recipient = FALSE),
+       (SELECT COUNT(*) FROM email_messages e
+         WHERE (e.sender_id = u.id AND e.deleted_by_sender = TRUE AND e.permanently_deleted_by_sender = FALSE)
+            OR (e.recipient_id = u.id AND e.deleted_by_recipient = TRUE AND e.permanently_deleted_by_recipient = FALSE))
+FROM users u
+WHERE NOT EXISTS (SELECT 1 FROM mailbox_counters c WHERE c.user_id = u.id);
@@ -0,0 +1,5 @@
+-- EmailMessage ids come from a pooled sequence (allocationSize 50) so inserts can be JDBC batched
+
+CREATE SEQUENCE IF NOT EXISTS email_messages_seq START WITH 1 INCREMENT BY 50;
+
+ALTER SEQUENCE email_messages_seq RESTART WITH (SELECT COALESCE(MAX(id), 0) + 1 FROM email_messages);
@@ -0,0 +1,4 @@
+-- MailboxCompactionService.findPurgeableIds:
+-- permanently_deleted_by_sender = TRUE AND (permanently_deleted_by_recipient = TRUE OR is_draft = TRUE)
+CREATE INDEX IF NOT EXISTS idx_email_purgeable
+    ON email_messages (permanently_deleted_by_sender, permanently_deleted_by_recipient, is_draft);
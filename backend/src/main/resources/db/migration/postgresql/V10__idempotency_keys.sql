@@ -0,0 +1,13 @@
+-- Responses of requests sent with an Idempotency-Key header (see IdempotencyService)
+
+CREATE TABLE IF NOT EXISTS idempotency_keys (
+    id              VARCHAR(255) NOT NULL PRIMARY KEY,
+    request_hash    VARCHAR(64)  NOT NULL,
+    completed       BOOLEAN      NOT NULL,
+    response_status INTEGER,
+    response_body   TEXT,
+    created_at      TIMESTAMP(6) NOT NULL
+);
+
+-- Hourly purge of expired keys
+CREATE INDEX IF NOT EXISTS idx_idempotency_keys_created_at ON idempotency_keys (created_at);
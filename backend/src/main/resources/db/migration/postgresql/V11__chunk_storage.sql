@@ -0,0 +1,4 @@
+-- Chunk bytes can live outside the database (ChunkStore); existing rows stay in the database store
+ALTER TABLE attachment_chunks ALTER COLUMN encrypted_data DROP NOT NULL;
+ALTER TABLE attachment_chunks ADD COLUMN IF NOT EXISTS storage VARCHAR(16) DEFAULT 'database' NOT NULL;
+ALTER TABLE attachment_chunks ADD COLUMN IF NOT EXISTS location VARCHAR(512);
@@ -0,0 +1,3 @@
+-- Received-chunk bitmap for upload status and completion (AttachmentService); filled in on the next chunk for existing rows
+ALTER TABLE attachments ADD COLUMN IF NOT EXISTS received_chunks BYTEA;
+ALTER TABLE attachments ADD COLUMN IF NOT EXISTS received_count INT;
@@ -0,0 +1,18 @@
+-- Per-user mailbox change log for delta sync (see MailboxChangeLog)
+
+ALTER TABLE mailbox_counters ADD COLUMN IF NOT EXISTS change_seq BIGINT DEFAULT 0 NOT NULL;
+
+CREATE TABLE IF NOT EXISTS mailbox_changes (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id     BIGINT       NOT NULL,
+    seq         BIGINT       NOT NULL,
+    email_id    BIGINT       NOT NULL,
+    change_type VARCHAR(16)  NOT NULL,
+    created_at  TIMESTAMP(6) NOT NULL
+);
+
+-- GET /api/emails/changes?since=N
+CREATE UNIQUE INDEX IF NOT EXISTS uk_mailbox_changes_user_seq ON mailbox_changes (user_id, seq);
+
+-- Retention purge
+CREATE INDEX IF NOT EXISTS idx_mailbox_changes_created_at ON mailbox_changes (created_at);
@@ -0,0 +1,21 @@
+-- Sender -> recipient reputation used by the spam rules (see SenderReputationService)
+
+CREATE TABLE IF NOT EXISTS sender_contacts (
+    sender_id             BIGINT       NOT NULL,
+    recipient_id          BIGINT       NOT NULL,
+    first_contact_at      TIMESTAMP(6) NOT NULL,
+    last_sent_at          TIMESTAMP(6) NOT NULL,
+    window_start          TIMESTAMP(6) NOT NULL,
+    window_count          INTEGER      NOT NULL,
+    previous_window_count INTEGER      NOT NULL,
+    PRIMARY KEY (sender_id, recipient_id)
+);
+
+-- Backfill from sent mail; the current window starts now and holds the last hour's sends
+INSERT INTO sender_contacts (sender_id, recipient_id, first_contact_at, last_sent_at,
+                             window_start, window_count, previous_window_count)
+SELECT e.sender_id, e.recipient_id, MIN(e.timestamp), MAX(e.timestamp), CURRENT_TIMESTAMP,
+       SUM(CASE WHEN e.timestamp > CURRENT_TIMESTAMP - INTERVAL '1 hour' THEN 1 ELSE 0 END), 0
+FROM email_messages e
+WHERE e.is_draft = FALSE
+GROUP BY e.sender_id, e.recipient_id;
@@ -0,0 +1,15 @@
+-- Journal of asynchronous sends (see DeliveryQueueService)
+
+CREATE TABLE IF NOT EXISTS delivery_queue (
+    id              VARCHAR(36)  NOT NULL PRIMARY KEY,
+    sender_username VARCHAR(255) NOT NULL,
+    payload         TEXT,
+    status          VARCHAR(16)  NOT NULL,
+    email_id        BIGINT,
+    error           VARCHAR(512),
+    created_at      TIMESTAMP(6) NOT NULL,
+    updated_at      TIMESTAMP(6) NOT NULL
+);
+
+-- Startup replay of PENDING rows, purge of settled ones
+CREATE INDEX IF NOT EXISTS idx_delivery_queue_status ON delivery_queue (status, created_at);
@@ -0,0 +1,2 @@
+-- Optimistic version for in-place draft autosave (EmailService.updateDraft)
+ALTER TABLE email_messages ADD COLUMN IF NOT EXISTS draft_version BIGINT DEFAULT 0 NOT NULL;
@@ -0,0 +1,111 @@
+package com.cryptamail.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The keyset folder queries and the V2 lookup indexes must be served by their
+ * composite indexes. Each case runs the real repository method, captures the SQL
+ * Hibernate generated for it, and EXPLAINs that SQL; H2 names the index it picks.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.cryptamail.repository.SqlCapture")
+class FolderIndexTest {
+
+    private static final LocalDateTime BEFORE = LocalDateTime.of(2030, 1, 1, 0, 0);
+    private static final PageRequest PAGE = PageRequest.of(0, 51);
+
+    @Autowired
+    private EmailRepository emailRepository;
+
+    @Autowired
+    private AttachmentChunkRepository chunkRepository;
+
+    @Autowired
+    private CloudFileRepository cloudFileRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    void inboxUsesInboxIndex() throws SQLException {
+        assertThat(explain(() -> emailRepository.findInboxPage(1L, BEFORE, 100L, PAGE)))
+                .containsIgnoringCase("idx_email_inbox");
+    }
+
+    @Test
+    void sentUsesSentIndex() throws SQLException {
+        assertThat(explain(() -> emailRepository.findSentPage(1L, BEFORE, 100L, PAGE)))
+                .containsIgnoringCase("idx_email_sent");
+    }
+
+    @Test
+    void draftsShareTheSentIndex() throws SQLException {
+        assertThat(explain(() -> emailRepository.findDraftsPage(1L, BEFORE, 100L, PAGE)))
+                .containsIgnoringCase("idx_email_sent");
+    }
+
+    @Test
+    void spamUsesSpamIndex() throws SQLException {
+        assertThat(explain(() -> emailRepository.findSpamPage(1L, BEFORE, 100L, PAGE)))
+                .containsIgnoringCase("idx_email_spam");
+    }
+
+    @Test
+    void trashUsesOneIndexPerSide() throws SQLException {
+        assertThat(explain(() -> emailRepository.findTrashPageAsSender(1L, BEFORE, 100L, PAGE)))
+                .containsIgnoringCase("idx_email_trash_sender");
+        assertThat(explain(() -> emailRepository.findTrashPageAsRecipient(1L, BEFORE, 100L, PAGE)))
+                .containsIgnoringCase("idx_email_trash_recipient");
+    }
+
+    @Test
+    void chunkRefsUseAttachmentChunkIndex() throws SQLException {
+        assertThat(explain(() -> chunkRepository.findChunkRefs(1L, -1, PageRequest.of(0, 64))))
+                .containsIgnoringCase("uk_attachment_chunks_attachment_index");
+    }
+
+    @Test
+    void activeCloudFilesUseUploaderIndex() throws SQLException {
+        assertThat(explain(() -> cloudFileRepository.findByUploaderIdAndIsDeletedFalse(1L)))
+                .containsIgnoringCase("idx_cloud_files_uploader_deleted");
+    }
+
+    private String explain(Runnable query) throws SQLException {
+        String sql = SqlCapture.lastStatementOf(query);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+            ParameterMetaData parameters = statement.getParameterMetaData();
+            for (int i = 1; i <= parameters.getParameterCount(); i++) {
+                statement.setObject(i, sample(parameters.getParameterType(i)));
+            }
+            try (ResultSet plan = statement.executeQuery()) {
+                plan.next();
+                return plan.getString(1);
+            }
+        }
+    }
+
+    // H2 types a parameter from the column it is compared with
+    private static Object sample(int sqlType) {
+        return switch (sqlType) {
+            case Types.TIMESTAMP, Types.TIMESTAMP_WITH_TIMEZONE -> Timestamp.valueOf(BEFORE);
+            case Types.BOOLEAN -> false;
+            case Types.INTEGER -> 1;
+            default -> 1L; // ids and row limits
+        };
+    }
+}
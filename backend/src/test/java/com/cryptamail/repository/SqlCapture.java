@@ -0,0 +1,33 @@
+package com.cryptamail.repository;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Records the SQL Hibernate sends, so tests can inspect what a repository method
+ * really runs. Enable with hibernate.session_factory.statement_inspector.
+ */
+public class SqlCapture implements StatementInspector {
+
+    private static final List<String> statements = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+        statements.add(sql);
+        return sql;
+    }
+
+    /**
+     * @return the last statement Hibernate prepared while running action
+     */
+    public static String lastStatementOf(Runnable action) {
+        statements.clear();
+        action.run();
+        if (statements.isEmpty()) {
+            throw new IllegalStateException("No SQL was run");
+        }
+        return statements.get(statements.size() - 1);
+    }
+}
@@ -0,0 +1,128 @@
+package com.cryptamail.service;
+
+import com.cryptamail.dto.EmailDto;
+import com.cryptamail.model.EmailMessage;
+import com.cryptamail.model.User;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A folder page costs a fixed number of statements however many rows and distinct
+ * correspondents it holds: the user lookup, the keyset query, one batched username
+ * lookup and one join query per link table. Counted with Hibernate Statistics.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({EmailService.class, UserDirectory.class})
+class FolderQueryCountTest {
+
+    private static final int MESSAGES = 60;
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @MockBean
+    private MailboxCounterService counterService;
+
+    @MockBean
+    private MailboxChangeLog changeLog;
+
+    @MockBean
+    private MailboxStreamService streamService;
+
+    @MockBean
+    private SenderReputationService reputationService;
+
+    @MockBean
+    private SendRateLimiter rateLimiter;
+
+    private Statistics statistics;
+    private final List<EmailMessage> messages = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        User reader = persistUser("reader");
+        LocalDateTime now = LocalDateTime.now();
+        // Every message has its own sender, so usernames cannot all come from one cache entry
+        for (int i = 0; i < MESSAGES; i++) {
+            User sender = persistUser("sender" + i);
+            messages.add(entityManager.persist(message(sender.getId(), reader.getId(), now.minusMinutes(i))));
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void inboxPageCostsTheSameAtAnySize() {
+        long small = statementsFor(() -> emailService.getInbox("reader", null, 5));
+        long large = statementsFor(() -> emailService.getInbox("reader", null, 50));
+
+        assertThat(small).isEqualTo(5);
+        assertThat(large).isEqualTo(small);
+    }
+
+    @Test
+    void hydrateLinksIsOneQueryPerLinkTable() {
+        long small = statementsFor(() -> emailService.hydrateLinks(dtos(3)));
+        long large = statementsFor(() -> emailService.hydrateLinks(dtos(MESSAGES)));
+
+        assertThat(small).isEqualTo(2);
+        assertThat(large).isEqualTo(small);
+    }
+
+    private long statementsFor(Runnable action) {
+        entityManager.clear();
+        statistics.clear();
+        action.run();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private List<EmailDto> dtos(int count) {
+        return messages.subList(0, count).stream().map(EmailDto::new).collect(Collectors.toList());
+    }
+
+    private User persistUser(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPasswordHash("hash");
+        user.setPublicKey("public-key");
+        user.setEncryptedPrivateKeyCiphertext("ciphertext");
+        user.setEncryptedPrivateKeyIv("iv");
+        user.setEncryptedPrivateKeySalt("salt");
+        user.setKdfIterations(1);
+        return entityManager.persist(user);
+    }
+
+    private EmailMessage message(Long senderId, Long recipientId, LocalDateTime timestamp) {
+        EmailMessage email = new EmailMessage();
+        email.setSenderId(senderId);
+        email.setRecipientId(recipientId);
+        email.setEncryptedSubject("subject");
+        email.setSubjectIv("iv");
+        email.setEncryptedBody("body");
+        email.setBodyIv("iv");
+        email.setEncryptedSymmetricKey("key");
+        email.setSenderEncryptedSymmetricKey("key");
+        email.setTimestamp(timestamp);
+        return email;
+    }
+}
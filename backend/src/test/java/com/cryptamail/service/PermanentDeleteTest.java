@@ -0,0 +1,125 @@
+package com.cryptamail.service;
+
+import com.cryptamail.model.EmailMessage;
+import com.cryptamail.model.User;
+import com.cryptamail.repository.EmailRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Deleting a message forever one at a time and through the bulk PERMANENT action
+ * must leave the same flags behind, since compaction and the counter repair read them.
+ */
+@DataJpaTest
+@Import({EmailService.class, UserDirectory.class})
+class PermanentDeleteTest {
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private EmailRepository emailRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @MockBean
+    private MailboxCounterService counterService;
+
+    @MockBean
+    private MailboxChangeLog changeLog;
+
+    @MockBean
+    private MailboxStreamService streamService;
+
+    @MockBean
+    private SenderReputationService reputationService;
+
+    @MockBean
+    private SendRateLimiter rateLimiter;
+
+    private User alice;
+    private User bob;
+
+    @BeforeEach
+    void setUp() {
+        alice = persistUser("alice");
+        bob = persistUser("bob");
+    }
+
+    @Test
+    void recipientSideMatches() {
+        assertSameRows("bob", message(alice, bob, false), message(alice, bob, false));
+    }
+
+    @Test
+    void senderSideMatches() {
+        assertSameRows("alice", message(alice, bob, false), message(alice, bob, false));
+    }
+
+    @Test
+    void draftToSelfMatches() {
+        assertSameRows("alice", message(alice, alice, true), message(alice, alice, true));
+    }
+
+    private void assertSameRows(String username, EmailMessage single, EmailMessage bulk) {
+        entityManager.persist(single);
+        entityManager.persist(bulk);
+        entityManager.flush();
+        entityManager.clear();
+
+        emailService.permanentlyDeleteEmail(single.getId(), username);
+        emailService.bulkUpdate(EmailService.BulkAction.PERMANENT, List.of(bulk.getId()), username);
+        entityManager.flush();
+        entityManager.clear();
+
+        assertThat(flags(state(single.getId()))).isEqualTo(flags(state(bulk.getId())));
+    }
+
+    private EmailRepository.FolderState state(Long id) {
+        return emailRepository.findFolderStates(List.of(id)).get(0);
+    }
+
+    private static List<Object> flags(EmailRepository.FolderState s) {
+        return List.of(s.getIsDraft(), s.getIsRead(), s.getIsSpam(),
+                s.getDeletedBySender(), s.getDeletedByRecipient(),
+                s.getPermanentlyDeletedBySender(), s.getPermanentlyDeletedByRecipient());
+    }
+
+    private User persistUser(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPasswordHash("hash");
+        user.setPublicKey("public-key");
+        user.setEncryptedPrivateKeyCiphertext("ciphertext");
+        user.setEncryptedPrivateKeyIv("iv");
+        user.setEncryptedPrivateKeySalt("salt");
+        user.setKdfIterations(1);
+        return entityManager.persist(user);
+    }
+
+    private EmailMessage message(User sender, User recipient, boolean draft) {
+        EmailMessage email = new EmailMessage();
+        email.setSenderId(sender.getId());
+        email.setRecipientId(recipient.getId());
+        email.setEncryptedSubject("subject");
+        email.setSubjectIv("iv");
+        email.setEncryptedBody("body");
+        email.setBodyIv("iv");
+        email.setEncryptedSymmetricKey("key");
+        email.setSenderEncryptedSymmetricKey("key");
+        email.setTimestamp(LocalDateTime.now());
+        email.setIsDraft(draft);
+        return email;
+    }
+}
@@ -24,6 +24,11 @@ export default function MailApp() {
   const [showCompose, setShowCompose] = useState(false);
   const [composeData, setComposeData] = useState(null);
   const [loading, setLoading] = useState(false);
+  const [nextCursor, setNextCursor] = useState(null);
+  const [loadingMore, setLoadingMore] = useState(false);
+  const activeViewRef = useRef(activeView);
+  const loadedMoreRef = useRef(false);
+  activeViewRef.current = activeView;
   const [sidebarCollapsed, setSidebarCollapsed] = useState(false);
 
   useEffect(() => {
@@ -41,41 +46,88 @@ export default function MailApp() {
     };
   }, [activeView]);
 
+  // One keyset page of a folder: { emails, nextCursor }
+  const fetchFolder = async (view, cursor) => {
+    let res;
+    if (view === "inbox") {
+      res = await emailAPI.getInbox(cursor);
+    } else if (view === "sent") {
+      res = await emailAPI.getSent(cursor);
+    } else if (view === "drafts") {
+      res = await emailAPI.getDrafts(cursor);
+    } else if (view === "trash") {
+      res = await emailAPI.getTrash(cursor);
+    } else if (view === "spam") {
+      res = await emailAPI.getSpam(cursor);
+    }
+
+    // Validate response before setting emails
+    if (!res || !res.data) {
+      throw new Error('Invalid response from server');
+    }
+
+    if (Array.isArray(res.data)) {
+      return { emails: res.data, nextCursor: null };
+    }
+    return { emails: res.data.emails || [], nextCursor: res.data.hasMore ? res.data.nextCursor : null };
+  };
+
 const loadEmails = async (view, silent = false) => {
     if (!silent) setLoading(true);
     if (!silent) setSelectedEmail(null);
     try {
-      let res;
-      if (view === "inbox") {
-        res = await emailAPI.getInbox();
-      } else if (view === "sent") {
-        res = await emailAPI.getSent();
-      } else if (view === "drafts") {
-        res = await emailAPI.getDrafts();
-      } else if (view === "trash") {
-        res = await emailAPI.getTrash();
-      } else if (view === "spam") {
-        res = await emailAPI.getSpam();
-      }
-      
-      // Validate response before setting emails
-      if (!res || !res.data) {
-        throw new Error('Invalid response from server');
+      const page = await fetchFolder(view);
+
+      if (!silent || !loadedMoreRef.current) {
+        loadedMoreRef.current = false;
+        setEmails(page.emails);
+        setNextCursor(page.nextCursor);
+        return;
       }
-      
-      setEmails(res.data);
+
+      // Polling refreshes the first page only; keep the older pages the user already loaded
+      const last = page.emails[page.emails.length - 1];
+      const ids = new Set(page.emails.map((e) => e.id));
+      setEmails((prev) => [
+        ...page.emails,
+        ...prev.filter((e) => !ids.has(e.id) && last &&
+          (e.timestamp < last.timestamp || (e.timestamp === last.timestamp && e.id < last.id))),
+      ]);
     } catch (error) {
       if (import.meta.env.DEV) {
         console.error("Failed to load emails", error);
       }
       if (!silent) {
         setEmails([]); // Clear emails on error to prevent stale data
+        setNextCursor(null);
       }
     } finally {
       if (!silent) setLoading(false);
     }
   };
 
+  const loadMoreEmails = async () => {
+    if (!nextCursor || loadingMore) return;
+    const view = activeView;
+    setLoadingMore(true);
+    try {
+      const page = await fetchFolder(view, nextCursor);
+      if (view !== activeViewRef.current) return;
+      loadedMoreRef.current = true;
+      setEmails((prev) => {
+        const ids = new Set(prev.map((e) => e.id));
+        return [...prev, ...page.emails.filter((e) => !ids.has(e.id))];
+      });
+      setNextCursor(page.nextCursor);
+    } catch (error) {
+      if (import.meta.env.DEV) {
+        console.error("Failed to load more emails", error);
+      }
+    } finally {
+      setLoadingMore(false);
+    }
+  };
+
   const handleEmptyTrash = async () => {
     try {
       const response = await emailAPI.emptyTrash();
@@ -155,6 +207,9 @@ const loadEmails = async (view, silent = false) => {
                       selectedEmailId={selectedEmail?.id}
                       viewType={activeView}
                       onEmptyTrash={activeView === "trash" ? handleEmptyTrash : undefined}
+                      hasMore={!!nextCursor}
+                      loadingMore={loadingMore}
+                      onLoadMore={loadMoreEmails}
                     />
                 </motion.div>
               </AnimatePresence>
@@ -49,8 +49,13 @@ export default function EmailDetail({
       });
 
       try {
+        // Listings omit the encrypted body; load the full message on open
+        const fullEmail = email.encryptedBody
+          ? email
+          : { ...email, ...(await emailAPI.getEmail(email.id)).data };
+
         const decrypted = await decryptEmailMessage(
-          email,
+          fullEmail,
           userPrivateKey,
           viewType
         );
@@ -12,6 +12,9 @@ export default function EmailList({
   selectedEmailId,
   viewType,
   onEmptyTrash,
+  hasMore = false,
+  loadingMore = false,
+  onLoadMore,
 }) {
   const { privateKey, isLocked } = useAuth();
   const [decryptedSubjects, setDecryptedSubjects] = useState({});
@@ -413,6 +416,19 @@ export default function EmailList({
             </motion.div>
           </AnimatePresence>
         )}
+
+        {/* Next keyset page */}
+        {hasMore && onLoadMore && (
+          <div className="flex justify-center py-3">
+            <button
+              onClick={onLoadMore}
+              disabled={loadingMore}
+              className="px-4 py-2 text-sm font-medium text-slate-600 dark:text-slate-300 bg-slate-100 dark:bg-slate-800 hover:bg-slate-200 dark:hover:bg-slate-700 disabled:opacity-60 rounded-lg transition-colors duration-200"
+            >
+              {loadingMore ? "Loading..." : "Load more"}
+            </button>
+          </div>
+        )}
       </div>
     </div>
   );
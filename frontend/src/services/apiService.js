@@ -149,18 +149,19 @@ export const userAPI = {
 };
 
 // Email endpoints
+// Folder listings are keyset pages ({ emails, nextCursor, hasMore }); pass nextCursor back for the next page
 export const emailAPI = {
-    getInbox: () => {
-        return api.get('/emails/inbox');
+    getInbox: (cursor) => {
+        return api.get('/emails/inbox', { params: { cursor } });
     },
-    getSent: () => {
-        return api.get('/emails/sent');
+    getSent: (cursor) => {
+        return api.get('/emails/sent', { params: { cursor } });
     },
-getTrash: () => {
-        return api.get('/emails/trash');
+getTrash: (cursor) => {
+        return api.get('/emails/trash', { params: { cursor } });
     },
-    getSpam: () => {
-        return api.get('/emails/spam');
+    getSpam: (cursor) => {
+        return api.get('/emails/spam', { params: { cursor } });
     },
     getEmail: (id) => {
         return api.get(`/emails/${id}`);
@@ -168,7 +169,7 @@ getTrash: () => {
     saveDraft: (emailData) => {
         return api.post('/emails/drafts', emailData);
     },
-    getDrafts: () => api.get("/emails/drafts"),
+    getDrafts: (cursor) => api.get("/emails/drafts", { params: { cursor } }),
     deleteDraft: (id) => api.delete(`/emails/drafts/${id}`),
     deleteEmail: (id) => api.delete(`/emails/${id}`),
     /**
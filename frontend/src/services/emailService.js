@@ -141,9 +141,8 @@ export async function decryptEmailMessage(email, userPrivateKey, viewType) {
         if (!email.encryptedSubject || !email.subjectIv) {
             throw new Error('Missing encrypted subject or IV');
         }
-        if (!email.encryptedBody || !email.bodyIv) {
-            throw new Error('Missing encrypted body or IV');
-        }
+        // Folder listings only carry headers; the body is fetched on open
+        const hasBody = !!(email.encryptedBody && email.bodyIv);
 
         console.log("🔐 About to decrypt subject and body:", {
             encryptedSymmetricKeyLength: encryptedSymmetricKey?.length,
@@ -174,24 +173,26 @@ export async function decryptEmailMessage(email, userPrivateKey, viewType) {
             decryptedSubject = "(Unable to decrypt subject)";
         }
 
-        let decryptedBody;
-        try {
-            decryptedBody = await decryptEmail(
-                email.encryptedBody,
-                email.bodyIv,
-                encryptedSymmetricKey,
-                userPrivateKey
-            );
-            console.log("✅ Body decrypted successfully:", {
-                decryptedLength: decryptedBody?.length,
-                preview: decryptedBody?.substring(0, 50)
-            });
-        } catch (bodyError) {
-            console.error("❌ Failed to decrypt body:", {
-                error: bodyError.message,
-                errorName: bodyError.name
-            });
-            decryptedBody = "(Unable to decrypt body)";
+        let decryptedBody = null;
+        if (hasBody) {
+            try {
+                decryptedBody = await decryptEmail(
+                    email.encryptedBody,
+                    email.bodyIv,
+                    encryptedSymmetricKey,
+                    userPrivateKey
+                );
+                console.log("✅ Body decrypted successfully:", {
+                    decryptedLength: decryptedBody?.length,
+                    preview: decryptedBody?.substring(0, 50)
+                });
+            } catch (bodyError) {
+                console.error("❌ Failed to decrypt body:", {
+                    error: bodyError.message,
+                    errorName: bodyError.name
+                });
+                decryptedBody = "(Unable to decrypt body)";
+            }
         }
 
         // Add attachment IDs to decrypted content